@@ -0,0 +1,116 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.List;
+
+/**
+ * The results of mining a batch of transactions into consecutive blocks.
+ *
+ * @author Slok Rajbhandari
+ */
+public class BatchReport {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of nanoseconds in a second.
+   */
+  static final double NANOS_PER_SECOND = 1e9;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks mined and appended, in order.
+   */
+  private final List<Block> blocks;
+
+  /**
+   * The total number of nonces tried.
+   */
+  private final long attempts;
+
+  /**
+   * How long the batch took, in nanoseconds.
+   */
+  private final long elapsedNanos;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a report.
+   *
+   * @param mined The blocks mined and appended.
+   * @param tries The total number of nonces tried.
+   * @param nanos How long the batch took, in nanoseconds.
+   */
+  BatchReport(List<Block> mined, long tries, long nanos) {
+    this.blocks = List.copyOf(mined);
+    this.attempts = tries;
+    this.elapsedNanos = nanos;
+  } // BatchReport(List<Block>, long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the blocks that were mined and appended, in order.
+   *
+   * @return the blocks.
+   */
+  public List<Block> getBlocks() {
+    return this.blocks;
+  } // getBlocks()
+
+  /**
+   * Get the total number of nonces tried across the batch.
+   *
+   * @return the number of attempts.
+   */
+  public long getAttempts() {
+    return this.attempts;
+  } // getAttempts()
+
+  /**
+   * Get how long the batch took.
+   *
+   * @return the elapsed time in nanoseconds.
+   */
+  public long getElapsedNanos() {
+    return this.elapsedNanos;
+  } // getElapsedNanos()
+
+  /**
+   * Get the rate at which blocks were produced.
+   *
+   * @return blocks per second.
+   */
+  public double blocksPerSecond() {
+    return blocks.size() * NANOS_PER_SECOND / Math.max(1, elapsedNanos);
+  } // blocksPerSecond()
+
+  /**
+   * Get the rate at which nonces were tried.
+   *
+   * @return hashes per second.
+   */
+  public double hashesPerSecond() {
+    return attempts * NANOS_PER_SECOND / Math.max(1, elapsedNanos);
+  } // hashesPerSecond()
+
+  /**
+   * Get a string representation of the report.
+   *
+   * @return a string representation of the report.
+   */
+  @Override
+  public String toString() {
+    return String.format("%d blocks, %d hashes in %.3f s (%.1f blocks/s, %.0f hashes/s)",
+        blocks.size(), attempts, elapsedNanos / NANOS_PER_SECOND, blocksPerSecond(),
+        hashesPerSecond());
+  } // toString()
+} // class BatchReport
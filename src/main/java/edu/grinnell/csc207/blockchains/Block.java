@@ -1,16 +1,28 @@
 package edu.grinnell.csc207.blockchains;
 
-import java.nio.ByteBuffer;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.List;
 
 /**
  * Blocks to be stored in blockchains.
  *
+ * A block holds one or more transactions. A block with one transaction
+ * hashes that transaction directly; a block with several commits to them
+ * through the root of their MerkleTree, so the header stays the same
+ * size however many transfers the block settles.
+ *
  * @author Mina Bakrac
  * @author Samuel A. Rebelsky
  */
 public class Block {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The mining time of a block that was not mined here.
+   */
+  public static final long UNTIMED = -1;
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
@@ -24,7 +36,14 @@ public class Block {
  * All the variables needed.
  *
  */
-  private final Transaction tran;
+  private final List<Transaction> tran;
+/**
+ * All the variables needed. The Merkle root is only needed for the hash
+ * of a block with several transactions, so for a block with one it is
+ * computed when first asked for (or null until then).
+ *
+ */
+  private Hash root;
 /**
  * All the variables needed.
  *
@@ -34,12 +53,19 @@ public class Block {
  * All the variables needed.
  *
  */
-  private long nonce; // Updated to non-final to allow mining process.
+  private final long nonce;
 /**
  * All the variables needed.
  *
  */
   private final Hash hCurr;
+/**
+ * How long the block took to mine, in nanoseconds, or UNTIMED. This is
+ * not part of the block's contents. It is set before the block is handed
+ * out, so it needs no lock.
+ *
+ */
+  private long miningTime = UNTIMED;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -56,12 +82,30 @@ public class Block {
    * @param check The validator used to check the block.
    */
   public Block(int num, Transaction transaction, Hash prevHash, HashValidator check) {
+    this(num, List.of(transaction), prevHash, check);
+  } // Block(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Create a new block from the specified block number, transactions,
+   * and previous hash, mining to choose a nonce that meets the
+   * requirements of the validator.
+   *
+   * @param num The number of the block.
+   * @param transactions The transactions for the block, in order.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator used to check the block.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block(int num, List<Transaction> transactions, Hash prevHash, HashValidator check) {
     this.numInChain = num;
-    this.tran = transaction;
+    this.tran = transactionList(transactions);
+    this.root = (this.tran.size() > 1) ? MerkleTree.root(this.tran) : null;
     this.hPrev = prevHash;
+    long start = System.nanoTime();
     this.nonce = mine(check); // Find a valid nonce.
+    this.miningTime = System.nanoTime() - start;
     this.hCurr = computeHash(); // Compute the current block's hash.
-  } // Block(int, Transaction, Hash, HashValidator)
+  } // Block(int, List<Transaction>, Hash, HashValidator)
 
   /**
    * Create a new block, computing the hash for the block.
@@ -72,61 +116,73 @@ public class Block {
    * @param nonce The nonce of the block.
    */
   public Block(int num, Transaction transaction, Hash prevHash, long nonce) {
+    this(num, List.of(transaction), prevHash, nonce);
+  } // Block(int, Transaction, Hash, long)
+
+  /**
+   * Create a new block with several transactions, computing the hash for
+   * the block.
+   *
+   * @param num The number of the block.
+   * @param transactions The transactions for the block, in order.
+   * @param prevHash The hash of the previous block.
+   * @param nonce The nonce of the block.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block(int num, List<Transaction> transactions, Hash prevHash, long nonce) {
     this.numInChain = num;
-    this.tran = transaction;
+    this.tran = transactionList(transactions);
+    this.root = (this.tran.size() > 1) ? MerkleTree.root(this.tran) : null;
     this.hPrev = prevHash;
     this.nonce = nonce;
     this.hCurr = computeHash(); // Compute the current block's hash.
-  } // Block(int, Transaction, Hash, long)
+  } // Block(int, List<Transaction>, Hash, long)
 
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
 
+  /**
+   * Copy a list of transactions, making sure that there is at least one.
+   *
+   * @param transactions The transactions.
+   * @return an unmodifiable copy.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  private static List<Transaction> transactionList(List<Transaction> transactions) {
+    if (transactions.isEmpty()) {
+      throw new IllegalArgumentException("A block needs at least one transaction.");
+    } // end of if
+    return List.copyOf(transactions);
+  } // transactionList(List<Transaction>)
+
   /**
    * Compute the hash of the block given all the other info already stored in the block.
    *
    * @return the computed hash.
    */
   private Hash computeHash() {
-    try {
-      MessageDigest md = MessageDigest.getInstance("SHA-256");
-
-      // Add number in chain.
-      md.update(ByteBuffer.allocate(Integer.BYTES).putInt(numInChain).array());
-
-      // Add transaction details.
-      md.update(tran.getSource().getBytes());
-      md.update(tran.getTarget().getBytes());
-      md.update(ByteBuffer.allocate(Integer.BYTES).putInt(tran.getAmount()).array());
-
-      // Add previous hash.
-      md.update(hPrev.getBytes());
-
-      // Add nonce.
-      md.update(ByteBuffer.allocate(Long.BYTES).putLong(nonce).array());
-
-      return new Hash(md.digest());
-    } catch (NoSuchAlgorithmException e) {
-      throw new RuntimeException("SHA-256 algorithm not found", e);
-    } //
+    return new BlockHasher(BlockHasher.prefix(numInChain, tran, root, hPrev)).hash(nonce);
   } // computeHash()
 
   /**
-   * Find a nonce that makes the hash valid.
+   * Find the smallest nonce that makes the hash valid, trying as many
+   * nonces at a time as the preferred engine has lanes.
    *
    * @param check the validator.
    * @return a valid nonce.
    */
   private long mine(HashValidator check) {
+    NonceEngine hasher =
+        MiningEngine.preferred().create(BlockHasher.prefix(numInChain, tran, root, hPrev));
+    int lanes = hasher.lanes();
     long attemptNonce = 0;
     while (true) {
-      nonce = attemptNonce; // Update nonce for mining process.
-      Hash candidateHash = computeHash();
-      if (check.isValid(candidateHash)) {
-        return attemptNonce;
+      int hit = hasher.firstValid(attemptNonce, check);
+      if (hit >= 0) {
+        return attemptNonce + hit;
       } // end of if
-      attemptNonce++;
+      attemptNonce += lanes;
     } // end of while loop
   } // mine(HashValidator)
 
@@ -144,14 +200,38 @@ public class Block {
   } // getNum()
 
   /**
-   * Get the transaction stored in this block.
+   * Get the (first) transaction stored in this block.
    *
    * @return the transaction.
    */
   public Transaction getTransaction() {
-    return this.tran;
+    return this.tran.get(0);
   } // getTransaction()
 
+  /**
+   * Get all of the transactions stored in this block.
+   *
+   * @return the transactions, in order, as an unmodifiable list.
+   */
+  public List<Transaction> getTransactions() {
+    return this.tran;
+  } // getTransactions()
+
+  /**
+   * Get the root of the Merkle tree over this block's transactions.
+   *
+   * @return the root.
+   */
+  public Hash getMerkleRoot() {
+    Hash merkleRoot = this.root;
+    if (merkleRoot == null) {
+      // Hashes are immutable, so a race here only repeats the work.
+      merkleRoot = MerkleTree.root(this.tran);
+      this.root = merkleRoot;
+    } // if
+    return merkleRoot;
+  } // getMerkleRoot()
+
   /**
    * Get the nonce of this block.
    *
@@ -161,6 +241,26 @@ public class Block {
     return this.nonce;
   } // getNonce()
 
+  /**
+   * Get how long this block took to mine.
+   *
+   * @return the mining time, in nanoseconds, or UNTIMED if the block was
+   *   not mined here.
+   */
+  public long getMiningTime() {
+    return this.miningTime;
+  } // getMiningTime()
+
+  /**
+   * Note how long this block took to mine, for blocks mined outside
+   * their constructor.
+   *
+   * @param nanos The mining time, in nanoseconds.
+   */
+  void setMiningTime(long nanos) {
+    this.miningTime = nanos;
+  } // setMiningTime(long)
+
   /**
    * Get the hash of the previous block.
    *
@@ -179,6 +279,19 @@ public class Block {
     return this.hCurr;
   } // getHash()
 
+  /**
+   * Recompute the hash of this block from its number, transactions,
+   * previous hash, and nonce, without trusting the stored hash or
+   * Merkle root.
+   *
+   * @return the recomputed hash.
+   */
+  Hash rehash() {
+    // Only a block with several transactions commits to a root.
+    Hash recomputed = (tran.size() > 1) ? MerkleTree.root(tran) : null;
+    return new BlockHasher(BlockHasher.prefix(numInChain, tran, recomputed, hPrev)).hash(nonce);
+  } // rehash()
+
   /**
    * Get a string representation of the block.
    *
@@ -186,8 +299,11 @@ public class Block {
    */
   @Override
   public String toString() {
-    return String.format("Block %d [Transaction: %s, Nonce: %d, PrevHash: %s, Hash: %s]",
-      numInChain, tran.toString(), nonce,
+    String body = (tran.size() == 1)
+        ? "Transaction: " + tran.get(0)
+        : "Transactions: " + tran + ", MerkleRoot: " + root;
+    return String.format("Block %d [%s, Nonce: %d, PrevHash: %s, Hash: %s]",
+      numInChain, body, nonce,
       (hPrev == null ? "null" : hPrev.toString()), hCurr.toString());
   } // toString()
 
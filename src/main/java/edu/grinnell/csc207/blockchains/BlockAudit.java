@@ -0,0 +1,130 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
+
+/**
+ * A deep check of a range of blocks that, unlike BlockChain.isCorrect,
+ * recomputes every block's hash from its contents. Each block can be
+ * checked on its own, so the range is split in halves until it is small
+ * and the halves are checked in parallel in a ForkJoinPool.
+ *
+ * Block n is good if its number is n, its recomputed hash is its stored
+ * hash and satisfies the validator for block n, and (past the first
+ * block) its previous hash is the stored hash of block n - 1.
+ *
+ * The task yields the number of the first bad block in the range, or -1
+ * if every block is good.
+ *
+ * @author Mina Bakrac
+ */
+class BlockAudit extends RecursiveTask<Integer> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The version of the serialized form, which ForkJoinTask requires.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The most blocks one task checks without splitting.
+   */
+  static final int BLOCKS_PER_TASK = 256;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks.
+   */
+  private final ChainSnapshot blocks;
+
+  /**
+   * The validator each block's hash must satisfy, by block number.
+   */
+  private final IntFunction<HashValidator> validators;
+
+  /**
+   * The number of the first block to check.
+   */
+  private final int from;
+
+  /**
+   * The number of the block after the last one to check.
+   */
+  private final int to;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a task that checks a range of blocks.
+   *
+   * @param ablocks The blocks.
+   * @param avalidators The validator each block's hash must satisfy, by
+   *   block number.
+   * @param afrom The number of the first block to check.
+   * @param ato The number of the block after the last one to check.
+   */
+  BlockAudit(ChainSnapshot ablocks, IntFunction<HashValidator> avalidators, int afrom,
+      int ato) {
+    this.blocks = ablocks;
+    this.validators = avalidators;
+    this.from = afrom;
+    this.to = ato;
+  } // BlockAudit(ChainSnapshot, IntFunction<HashValidator>, int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine if one block is good.
+   *
+   * @param n The number of the block.
+   * @return true if the block is good.
+   */
+  private boolean isGood(int n) {
+    Block blk = blocks.getBlock(n);
+    Hash hash = blk.getHash();
+    return blk.getNum() == n
+        && blk.rehash().equals(hash)
+        && validators.apply(n).isValid(hash)
+        && (n == 0 || blk.getPrevHash().equals(blocks.getBlock(n - 1).getHash()));
+  } // isGood(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Check the range.
+   *
+   * @return the number of the first bad block, or -1 if all are good.
+   */
+  @Override
+  protected Integer compute() {
+    if (to - from <= BLOCKS_PER_TASK) {
+      for (int n = from; n < to; n++) {
+        if (!isGood(n)) {
+          return n;
+        } // if
+      } // for
+      return -1;
+    } // if
+    int mid = (from + to) >>> 1;
+    BlockAudit right = new BlockAudit(blocks, validators, mid, to);
+    right.fork();
+    int bad = new BlockAudit(blocks, validators, from, mid).compute();
+    if (bad >= 0) {
+      // The right half cannot hold an earlier bad block.
+      right.cancel(false);
+      return bad;
+    } // if
+    return right.join();
+  } // compute()
+} // class BlockAudit
@@ -1,39 +1,123 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.NoSuchElementException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
 
 /**
- * A full blockchain implemented with a Node-based linked list.
+ * A full blockchain, with its blocks stored by number so that the last
+ * block, any numbered block, and removal of the last block take
+ * constant time. Blocks may hold several transactions; iteration,
+ * balances, and users cover every transaction in every block.
+ *
+ * One thread at a time changes the chain, while any number of threads
+ * read it. Readers of blocks never wait: each read works on the
+ * ChainSnapshot published by the latest change, which never changes
+ * afterwards. Balances are read optimistically, and are retried under
+ * a read lock only if a change was under way. The other indices are
+ * read under the read lock, which waits only while a change is made.
  *
  * @author Slok Rajbhandari
  * @author Samuel A. Rebelsky
  */
-public class BlockChain implements Iterable<Transaction> {
+public class BlockChain implements Iterable<Transaction>, AutoCloseable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The bits of verified that hold the number of verified blocks.
+   */
+  private static final long WATERMARK = 0xFFFFFFFFL;
+
+  /**
+   * The amount by which lowering verified changes it, above the
+   * watermark.
+   */
+  private static final long LOWERED = 1L << 32;
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
 
   /**
-   * The head (first node) of the blockchain.
+   * The blocks in the chain, by number.
+   */
+  private final BlockStore store = new BlockStore();
+
+  /**
+   * The blocks in the chain, by hash.
+   */
+  private final BlockIndex index = new BlockIndex();
+
+  /**
+   * The ids of the users of the chain.
    */
-  private Node head;
+  private final UserTable table = new UserTable();
 
   /**
-   * The tail (last node) of the blockchain.
+   * The balance of every user, as of the last block.
    */
-  private Node tail;
+  private final Ledger ledger = new Ledger();
 
   /**
-   * The size of the blockchain.
+   * Balances every so many blocks, for balances as of earlier blocks.
    */
-  private int size;
+  private LedgerCheckpoints checkpoints =
+      new LedgerCheckpoints(LedgerCheckpoints.DEFAULT_INTERVAL);
 
   /**
-   * The validator used for mining and checking hashes.
+   * The distinct users of the chain, with the blocks each appears in.
+   */
+  private final UserDirectory directory = new UserDirectory();
+
+  /**
+   * Serializes changes to the chain, and guards the index, user table,
+   * ledger, checkpoints, and directory, which have no snapshots of their
+   * own.
+   */
+  private final StampedLock lock = new StampedLock();
+
+  /**
+   * In the low 32 bits, the number of blocks at the start of the chain
+   * already found to be correct, so that isCorrect need only check the
+   * blocks after them; in the high 32 bits, the number of times it has
+   * been lowered. Blocks never change, so only removing blocks (or an
+   * audit) lowers it. Checks raise it without the lock, by
+   * compareAndSet; since every lowering changes the count, a check that
+   * raced with a removal fails its compareAndSet and looks again.
+   */
+  private final AtomicLong verified = new AtomicLong(1);
+
+  /**
+   * The validator used for mining and checking hashes (or, if the chain
+   * retargets, the easiest target allowed).
    */
   private final HashValidator validator;
 
+  /**
+   * The miner used for parallel mining (or null to mine on the calling thread).
+   */
+  private final Miner miner;
+
+  /**
+   * Whether we created the miner, and so must shut it down.
+   */
+  private final boolean ownsMiner;
+
+  /**
+   * Adjusts the mining difficulty (or null to always mine against the
+   * validator).
+   */
+  private final Retargeter retargeter;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -44,39 +128,137 @@ public class BlockChain implements Iterable<Transaction> {
    * @param evalidator The validator used to check elements.
    */
   public BlockChain(HashValidator evalidator) {
+    this(evalidator, null);
+  } // BlockChain (HashValidator)
+
+  /**
+   * Create a new blockchain that mines with the given number of parallel
+   * workers. The chain owns their threads, so close it when done.
+   *
+   * @param evalidator The validator used to check elements.
+   * @param workers The number of workers used when mining.
+   */
+  public BlockChain(HashValidator evalidator, int workers) {
+    this(evalidator, new Miner(workers), null, true);
+  } // BlockChain (HashValidator, int)
+
+  /**
+   * Create a new blockchain that mines with the given miner. The caller
+   * still owns the miner, and shuts it down.
+   *
+   * @param evalidator The validator used to check elements.
+   * @param eminer The miner to use (or null to mine on the calling thread).
+   */
+  public BlockChain(HashValidator evalidator, Miner eminer) {
+    this(evalidator, eminer, null, false);
+  } // BlockChain (HashValidator, Miner)
+
+  /**
+   * Create a new blockchain whose mining difficulty is retargeted from
+   * observed mining times. Each block is checked against the target in
+   * effect when it was appended.
+   *
+   * @param eretargeter The retargeter, which serves only this chain.
+   * @param eminer The miner to use (or null to mine on the calling thread).
+   */
+  public BlockChain(Retargeter eretargeter, Miner eminer) {
+    this(eretargeter.getFloor(), eminer, eretargeter, false);
+  } // BlockChain (Retargeter, Miner)
+
+  /**
+   * Create a new blockchain.
+   *
+   * @param evalidator The validator used to check elements.
+   * @param eminer The miner to use (or null to mine on the calling thread).
+   * @param eretargeter The retargeter to use (or null for none).
+   * @param eownsMiner Whether the chain shuts the miner down on close.
+   */
+  private BlockChain(HashValidator evalidator, Miner eminer, Retargeter eretargeter,
+      boolean eownsMiner) {
     this.validator = evalidator;
+    this.miner = eminer;
+    this.ownsMiner = eownsMiner;
+    this.retargeter = eretargeter;
     // Create the initial block with a deposit.
     Transaction genesisTransaction = new Transaction("", "", 0);
-    Block genesisBlock = new Block(0, genesisTransaction, new Hash(new byte[0]), evalidator);
-    this.head = this.tail = new Node(genesisBlock);
-    this.size = 1;
-  } // BlockChain ()
+    Block genesisBlock = mineBlock(0, List.of(genesisTransaction), new Hash(new byte[0]));
+    int[] ids = this.table.intern(genesisBlock);
+    this.store.add(genesisBlock);
+    this.ledger.apply(genesisBlock, ids);
+    this.checkpoints.record(0, ids, ledger);
+    this.directory.add(ids);
+    this.index.add(genesisBlock);
+    if (retargeter != null) {
+      // The initial block is not timed, so it does not skew the target.
+      this.retargeter.record(0, Block.UNTIMED);
+    } // if
+  } // BlockChain (HashValidator, Miner, Retargeter, boolean)
 
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
 
   /**
-   * A node class for the linked list structure.
+   * Mine a block, using the miner if we have one.
+   *
+   * @param num The number of the block.
+   * @param transactions The transactions that go in the block.
+   * @param prevHash The hash of the previous block.
+   * @return a new block that satisfies the validator.
    */
-  private static class Node {
-    /**
-     * Block.
-     */
-    Block block;
-    /**
-     * Node next.
-     */
-    Node next;
+  private Block mineBlock(int num, List<Transaction> transactions, Hash prevHash) {
+    HashValidator check = getMiningValidator();
+    return (miner == null)
+        ? new Block(num, transactions, prevHash, check)
+        : miner.mine(num, transactions, prevHash, check);
+  } // mineBlock(int, List<Transaction>, Hash)
 
-    /**
-     * Node (Block block).
-     * @param nblock
-     */
-    Node(Block nblock) {
-      this.block = nblock;
-    } // Node
-  } // Node
+  /**
+   * Raise the watermark to cover blocks that were found correct in a
+   * snapshot, unless the chain no longer starts with those blocks.
+   *
+   * @param snap The snapshot that was checked.
+   * @param n The number of blocks found correct.
+   */
+  private void advanceVerified(ChainSnapshot snap, int n) {
+    while (true) {
+      long seen = verified.get();
+      if (n <= (int) seen) {
+        return;
+      } // if
+      // A removal publishes the new store before lowering the watermark,
+      // so if the watermark is unchanged, this is the chain as of seen.
+      ChainSnapshot now = store.snapshot();
+      if (n > now.getSize() || now.getBlock(n - 1) != snap.getBlock(n - 1)) {
+        return;
+      } // if
+      if (verified.compareAndSet(seen, (seen & ~WATERMARK) | n)) {
+        return;
+      } // if
+    } // while
+  } // advanceVerified(ChainSnapshot, int)
+
+  /**
+   * Lower the watermark to at most some number of blocks.
+   *
+   * @param n The most blocks that may still be verified.
+   */
+  private void lowerVerified(int n) {
+    verified.updateAndGet((seen) ->
+        ((seen & ~WATERMARK) + LOWERED) | Math.min(seen & WATERMARK, n));
+  } // lowerVerified(int)
+
+  /**
+   * Get the validator a block must satisfy: the chain's validator, or,
+   * if the chain retargets, the target in effect when the block was
+   * (or will be) appended.
+   *
+   * @param num The number of the block.
+   * @return the validator.
+   */
+  private HashValidator validatorFor(int num) {
+    return (retargeter == null) ? validator : retargeter.target(num);
+  } // validatorFor(int)
 
   // +---------+-----------------------------------------------------
   // | Methods |
@@ -89,18 +271,253 @@ public class BlockChain implements Iterable<Transaction> {
    * @return a new block with correct number, hashes, and such.
    */
   public Block mine(Transaction transaction) {
-    return new Block(size, transaction, tail.block.getHash(), validator);
+    return mine(List.of(transaction));
   } // mine ()
 
+  /**
+   * Mine for a new valid block that settles several transactions at
+   * once, returning that block.
+   *
+   * @param transactions The transactions that go in the block, in order.
+   * @return a new block with correct number, hashes, and such.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public Block mine(List<Transaction> transactions) {
+    if (transactions.isEmpty()) {
+      throw new IllegalArgumentException("A block needs at least one transaction.");
+    } // if
+    ChainSnapshot tip = store.snapshot();
+    return mineBlock(tip.getSize(), transactions, tip.getHash());
+  } // mine(List<Transaction>)
+
+  /**
+   * Take the next batch of transactions from a pool (waiting for one if
+   * the pool is empty), mine them into a block, and append it. A mining
+   * loop calls this repeatedly while producers fill the pool.
+   * Transactions already in the chain are settled and left out of the
+   * block; if that leaves none, we take another batch.
+   *
+   * @param pool The pending transactions.
+   * @param maxPerBlock The most transactions to put in the block.
+   * @return the appended block.
+   * @throws InterruptedException if interrupted while waiting for
+   *   transactions; the pool is unchanged.
+   * @throws IllegalStateException if mining fails or is interrupted; the
+   *   batch goes back to the pool.
+   * @throws IllegalArgumentException if the block cannot be appended
+   *   (say, because another block was appended first); the batch goes
+   *   back to the pool.
+   */
+  public Block mineFrom(TransactionPool pool, int maxPerBlock) throws InterruptedException {
+    if (maxPerBlock < 1) {
+      throw new IllegalArgumentException("A block needs at least one transaction.");
+    } // if
+    List<Transaction> batch = new ArrayList<>();
+    while (batch.isEmpty()) {
+      List<Transaction> stale = new ArrayList<>();
+      for (Transaction t : pool.take(maxPerBlock)) {
+        if (contains(t)) {
+          stale.add(t);
+        } else {
+          batch.add(t);
+        } // if/else
+      } // for
+      pool.settle(stale);
+    } // while
+    Block blk;
+    try {
+      blk = mine(batch);
+      append(blk);
+    } catch (RuntimeException e) {
+      pool.requeue(batch);
+      throw e;
+    } // try/catch
+    pool.settle(batch);
+    return blk;
+  } // mineFrom(TransactionPool, int)
+
+  /**
+   * Start mining a new block for the end of the chain without waiting
+   * for it. The block is not appended; the caller appends it once the
+   * job completes (if the chain has not changed in the meantime).
+   *
+   * @param transaction The transaction that goes in the block.
+   * @return the running job.
+   */
+  public MiningJob mineAsync(Transaction transaction) {
+    return mineAsync(transaction, null, null);
+  } // mineAsync(Transaction)
+
+  /**
+   * Start mining a new block for the end of the chain, giving up once
+   * the timeout passes.
+   *
+   * @param transaction The transaction that goes in the block.
+   * @param timeout How long to search (or null for no limit).
+   * @return the running job.
+   */
+  public MiningJob mineAsync(Transaction transaction, Duration timeout) {
+    return mineAsync(transaction, timeout, null);
+  } // mineAsync(Transaction, Duration)
+
+  /**
+   * Start mining a new block for the end of the chain on the given
+   * executor, so that many jobs can share one set of threads.
+   *
+   * @param transaction The transaction that goes in the block.
+   * @param timeout How long to search (or null for no limit).
+   * @param executor Where the search runs (or null to use the chain's
+   *   miner, or the common pool if there is none).
+   * @return the running job.
+   */
+  public MiningJob mineAsync(Transaction transaction, Duration timeout, Executor executor) {
+    return mineAsync(transaction, timeout, executor, null);
+  } // mineAsync(Transaction, Duration, Executor)
+
+  /**
+   * Start mining a new block for the end of the chain, resuming from a
+   * checkpoint of an earlier search for the same block (if there is one)
+   * and saving progress to it as we go.
+   *
+   * @param transaction The transaction that goes in the block.
+   * @param timeout How long to search (or null for no limit).
+   * @param executor Where the search runs (or null to use the chain's
+   *   miner, or the common pool if there is none).
+   * @param checkpoint Where progress is saved (or null to not save it).
+   * @return the running job.
+   */
+  public MiningJob mineAsync(Transaction transaction, Duration timeout, Executor executor,
+      NonceCheckpoint checkpoint) {
+    return mineAsync(List.of(transaction), timeout, executor, checkpoint);
+  } // mineAsync(Transaction, Duration, Executor, NonceCheckpoint)
+
+  /**
+   * Start mining a new block with several transactions for the end of
+   * the chain.
+   *
+   * @param transactions The transactions that go in the block, in order.
+   * @param timeout How long to search (or null for no limit).
+   * @param executor Where the search runs (or null to use the chain's
+   *   miner, or the common pool if there is none).
+   * @param checkpoint Where progress is saved (or null to not save it).
+   * @return the running job.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public MiningJob mineAsync(List<Transaction> transactions, Duration timeout,
+      Executor executor, NonceCheckpoint checkpoint) {
+    if (transactions.isEmpty()) {
+      throw new IllegalArgumentException("A block needs at least one transaction.");
+    } // if
+    HashValidator check = getMiningValidator();
+    ChainSnapshot tip = store.snapshot();
+    MiningJob job;
+    if (executor == null && miner != null) {
+      job = miner.start(tip.getSize(), transactions, tip.getHash(), check, timeout, checkpoint);
+    } else {
+      job = new MiningJob(tip.getSize(), transactions, tip.getHash(), check, timeout, checkpoint,
+          MiningEngine.preferred())
+          .start((executor == null) ? ForkJoinPool.commonPool() : executor,
+              (miner == null) ? 1 : miner.getWorkers());
+    } // if/else
+    return job;
+  } // mineAsync(List<Transaction>, Duration, Executor, NonceCheckpoint)
+
+  /**
+   * Mine each of the transactions, in order, into consecutive blocks,
+   * appending each block as soon as it is found. Every block is mined
+   * with all of the chain's workers (or, if the chain has no miner, one
+   * worker per processor).
+   *
+   * @param transactions The transactions to mine.
+   * @return a report of the blocks appended and the batch's throughput.
+   * @throws IllegalStateException if mining fails or is interrupted; the
+   *   blocks mined before that point stay appended.
+   */
+  public BatchReport mineAll(Iterable<Transaction> transactions) {
+    Miner batchMiner = (miner == null) ? new Miner() : miner;
+    List<Block> mined = new ArrayList<>();
+    long attempts = 0;
+    long start = System.nanoTime();
+    try {
+      for (Transaction transaction : transactions) {
+        ChainSnapshot tip = store.snapshot();
+        MiningJob job = batchMiner.start(tip.getSize(), transaction, tip.getHash(),
+            getMiningValidator(), null);
+        try {
+          Block blk = job.get();
+          append(blk);
+          mined.add(blk);
+        } catch (InterruptedException e) {
+          job.cancel();
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Mining interrupted", e);
+        } catch (ExecutionException e) {
+          throw new IllegalStateException("Mining failed", e.getCause());
+        } finally {
+          attempts += job.getAttempts();
+        } // try/catch/finally
+      } // for
+    } finally {
+      if (batchMiner != miner) {
+        batchMiner.shutdown();
+      } // if
+    } // try/finally
+    return new BatchReport(mined, attempts, System.nanoTime() - start);
+  } // mineAll(Iterable<Transaction>)
+
+  /**
+   * Mine each of the transactions, in order, into consecutive blocks.
+   *
+   * @param transactions The transactions to mine.
+   * @return a report of the blocks appended and the batch's throughput.
+   * @see #mineAll(Iterable)
+   */
+  public BatchReport mineAll(Stream<Transaction> transactions) {
+    return mineAll(transactions::iterator);
+  } // mineAll(Stream<Transaction>)
+
+  /**
+   * Release the chain's resources: the miner's threads, if the chain
+   * created the miner. The chain can still be read after it is closed,
+   * but no longer mined with.
+   */
+  @Override
+  public void close() {
+    if (ownsMiner) {
+      miner.shutdown();
+    } // if
+  } // close()
+
+  /**
+   * Get the validator that new blocks are mined against. This is the
+   * chain's validator unless the chain retargets its difficulty.
+   *
+   * @return the mining validator.
+   */
+  public HashValidator getMiningValidator() {
+    return (retargeter == null) ? validator : retargeter.current();
+  } // getMiningValidator()
+
   /**
    * Get the number of blocks currently in the chain.
    *
    * @return the number of blocks in the chain, including the initial block.
    */
   public int getSize() {
-    return size;
+    return store.size();
   } // getSize()
 
+  /**
+   * Get the blocks in the chain as they are now. The snapshot does not
+   * change as blocks are appended or removed, and may be read from any
+   * thread.
+   *
+   * @return the snapshot.
+   */
+  public ChainSnapshot snapshot() {
+    return store.snapshot();
+  } // snapshot()
+
   /**
    * Add a block to the end of the chain.
    *
@@ -108,16 +525,26 @@ public class BlockChain implements Iterable<Transaction> {
    * @throws IllegalArgumentException if the block is invalid.
    */
   public void append(Block blk) {
-    if (!blk.getPrevHash().equals(tail.block.getHash())) {
-      throw new IllegalArgumentException("Invalid previous hash in block.");
-    } // if loop
-    if (!validator.isValid(blk.getHash())) {
-      throw new IllegalArgumentException("Invalid hash for block.");
-    } // if loop
-    Node newNode = new Node(blk);
-    tail.next = newNode;
-    tail = newNode;
-    size++;
+    long stamp = lock.writeLock();
+    try {
+      if (!blk.getPrevHash().equals(store.last().getHash())) {
+        throw new IllegalArgumentException("Invalid previous hash in block.");
+      } // if loop
+      if (!validatorFor(store.size()).isValid(blk.getHash())) {
+        throw new IllegalArgumentException("Invalid hash for block.");
+      } // if loop
+      index.add(blk);
+      int[] ids = table.intern(blk);
+      ledger.apply(blk, ids);
+      checkpoints.record(store.size(), ids, ledger);
+      directory.add(ids);
+      store.add(blk);
+      if (retargeter != null) {
+        retargeter.record(store.size() - 1, blk.getMiningTime());
+      } // if
+    } finally {
+      lock.unlockWrite(stamp);
+    } // try/finally
   } // append()
 
   /**
@@ -126,48 +553,166 @@ public class BlockChain implements Iterable<Transaction> {
    * @return false if the chain has only one block or true otherwise.
    */
   public boolean removeLast() {
-    if (head == tail) {
-      return false; // Cannot remove the genesis block.
-    } // end of if
-    Node current = head;
-    while (current.next != tail) {
-      current = current.next;
-    } // while
-    current.next = null;
-    tail = current;
-    size--;
-    return true;
+    long stamp = lock.writeLock();
+    try {
+      if (store.size() == 1) {
+        return false; // Cannot remove the genesis block.
+      } // end of if
+      Block removed = store.removeLast();
+      int[] ids = directory.remove();
+      index.remove(removed.getHash());
+      ledger.revert(removed, ids);
+      checkpoints.truncate(store.size());
+      if (retargeter != null) {
+        retargeter.truncate(store.size());
+      } // if
+      lowerVerified(store.size());
+      return true;
+    } finally {
+      lock.unlockWrite(stamp);
+    } // try/finally
   } // removeLast()
 
+  /**
+   * Get a block in the chain by its number.
+   *
+   * @param n The number of the block.
+   * @return the block.
+   * @throws IndexOutOfBoundsException if the chain has no block n.
+   */
+  public Block getBlock(int n) {
+    return store.get(n);
+  } // getBlock(int)
+
+  /**
+   * Get the block in the chain with the given hash.
+   *
+   * @param hash The hash of the block.
+   * @return the block, or null if no block in the chain has that hash.
+   */
+  public Block getBlockByHash(Hash hash) {
+    long stamp = lock.readLock();
+    try {
+      return index.get(hash);
+    } finally {
+      lock.unlockRead(stamp);
+    } // try/finally
+  } // getBlockByHash(Hash)
+
+  /**
+   * Determine if some block in the chain has the given hash.
+   *
+   * @param hash The hash.
+   * @return true if a block in the chain has that hash.
+   */
+  public boolean contains(Hash hash) {
+    return getBlockByHash(hash) != null;
+  } // contains(Hash)
+
+  /**
+   * Build a proof that a transaction is in this chain, which a client
+   * that trusts the hash of the block holding it can check without the
+   * chain.
+   *
+   * @param transaction The transaction.
+   * @return a proof for the first block holding the transaction, or null
+   *   if no block holds it.
+   */
+  public InclusionProof prove(Transaction transaction) {
+    ChainSnapshot snap = store.snapshot();
+    for (int n = 0; n < snap.getSize(); n++) {
+      Block blk = snap.getBlock(n);
+      int index = blk.getTransactions().indexOf(transaction);
+      if (index >= 0) {
+        return InclusionProof.of(blk, index);
+      } // if
+    } // for
+    return null;
+  } // prove(Transaction)
+
   /**
    * Get the hash of the last block in the chain.
    *
    * @return the hash of the last block in the chain.
    */
   public Hash getHash() {
-    return tail.block.getHash();
+    return store.last().getHash();
   } // getHash()
 
   /**
-   * Determine if the blockchain is correct.
+   * Determine if the blockchain is correct. Only the blocks added since
+   * the chain was last found correct are checked.
    *
    * @return true if the blockchain is valid; false otherwise.
    */
   public boolean isCorrect() {
-    Node current = head;
-    while (current.next != null) {
-      Block currentBlock = current.block;
-      Block nextBlock = current.next.block;
-      if (!nextBlock.getPrevHash().equals(currentBlock.getHash())) {
-        return false;
-      } // end of if
-      if (!validator.isValid(currentBlock.getHash())) {
+    return isCorrect(false);
+  } // isCorrect()
+
+  /**
+   * Determine if the blockchain is correct, optionally checking every
+   * block rather than only those added since the last check.
+   *
+   * @param full Whether to check every block.
+   * @return true if the blockchain is valid; false otherwise.
+   */
+  public boolean isCorrect(boolean full) {
+    ChainSnapshot snap = store.snapshot();
+    int from = full ? 1 : Math.max(1, Math.min(getVerifiedSize(), snap.getSize()));
+    for (int i = from; i < snap.getSize(); i++) {
+      Block currentBlock = snap.getBlock(i - 1);
+      Block nextBlock = snap.getBlock(i);
+      if (!nextBlock.getPrevHash().equals(currentBlock.getHash())
+          || !validatorFor(i - 1).isValid(currentBlock.getHash())) {
+        advanceVerified(snap, i);
         return false;
       } // end of if
-      current = current.next;
-    } // end of while
+    } // end of for
+    advanceVerified(snap, snap.getSize());
     return true;
-  } // isCorrect()
+  } // isCorrect(boolean)
+
+  /**
+   * Check every block in depth, recomputing each block's hash from its
+   * contents, on the common ForkJoinPool.
+   *
+   * @return the number of the first bad block, or -1 if every block is
+   *   good.
+   */
+  public int audit() {
+    return audit(ForkJoinPool.commonPool());
+  } // audit()
+
+  /**
+   * Check every block in depth, recomputing each block's hash from its
+   * contents, on the given pool. Besides what isCorrect checks, this
+   * catches blocks whose stored hash or number does not match their
+   * contents or place in the chain.
+   *
+   * @param pool The pool to check on.
+   * @return the number of the first bad block, or -1 if every block is
+   *   good.
+   */
+  public int audit(ForkJoinPool pool) {
+    ChainSnapshot snap = store.snapshot();
+    int bad = pool.invoke(new BlockAudit(snap, this::validatorFor, 0, snap.getSize()));
+    if (bad < 0) {
+      advanceVerified(snap, snap.getSize());
+    } else {
+      lowerVerified(bad);
+    } // if/else
+    return bad;
+  } // audit(ForkJoinPool)
+
+  /**
+   * Get the number of blocks at the start of the chain that have already
+   * been found correct.
+   *
+   * @return the number of verified blocks.
+   */
+  public int getVerifiedSize() {
+    return (int) verified.get();
+  } // getVerifiedSize()
 
   /**
    * Check if the blockchain is correct. Throws an exception if not.
@@ -175,82 +720,322 @@ public class BlockChain implements Iterable<Transaction> {
    * @throws Exception if the blockchain is invalid.
    */
   public void check() throws Exception {
-    if (!isCorrect()) {
+    check(false);
+  } // check()
+
+  /**
+   * Check if the blockchain is correct, optionally checking every block.
+   * Throws an exception if not.
+   *
+   * @param full Whether to check every block.
+   * @throws Exception if the blockchain is invalid.
+   */
+  public void check(boolean full) throws Exception {
+    if (!isCorrect(full)) {
       throw new Exception("Blockchain is invalid.");
     } // end if
-  } // check()
+  } // check(boolean)
 
   /**
-   * Return an iterator of all the people who participated in the system.
+   * Return an iterator of all the people who participated in the system,
+   * as a source or a target, each once, in the order they first appear.
    *
-   * @return an iterator of all the people in the system.
+   * @return an iterator of all the people in the system (as of the call).
    */
   public Iterator<String> users() {
-    return new Iterator<>() {
-      Node current = head;
-
-      @Override
-      public boolean hasNext() {
-        return current != null;
-      } // hasNext()
-
-      @Override
-      public String next() {
-        if (!hasNext()) {
-          throw new NoSuchElementException();
-        } // end of if
-        Transaction t = current.block.getTransaction();
-        current = current.next;
-        return t.getTarget();
-      } // next()
-    };
+    long stamp = lock.readLock();
+    try {
+      List<String> users = new ArrayList<>(directory.size());
+      for (int i = 0; i < directory.size(); i++) {
+        users.add(table.name(directory.get(i)));
+      } // for
+      return users.iterator();
+    } finally {
+      lock.unlockRead(stamp);
+    } // try/finally
   } // end of Iterator
 
+  /**
+   * Get the number of people who participated in the system.
+   *
+   * @return the number of distinct users.
+   */
+  public int getUserCount() {
+    long stamp = lock.readLock();
+    try {
+      return directory.size();
+    } finally {
+      lock.unlockRead(stamp);
+    } // try/finally
+  } // getUserCount()
+
+  /**
+   * Determine if a transaction equal to the given one is in some block.
+   * Only the blocks of whichever of its users is in fewer blocks are
+   * searched.
+   *
+   * @param transaction The transaction.
+   * @return true if the chain holds an equal transaction.
+   */
+  public boolean contains(Transaction transaction) {
+    long stamp = lock.readLock();
+    try {
+      int id = table.idOf(transaction.getSource());
+      int target = table.idOf(transaction.getTarget());
+      // Deposits come from the empty name, which the directory skips.
+      if (id == UserTable.NOBODY || directory.count(target) < directory.count(id)) {
+        id = target;
+      } // if
+      for (int i = 0; i < directory.count(id); i++) {
+        for (Transaction t : store.get(directory.block(id, i)).getTransactions()) {
+          if (t.equals(transaction)) {
+            return true;
+          } // if
+        } // for
+      } // for
+      return false;
+    } finally {
+      lock.unlockRead(stamp);
+    } // try/finally
+  } // contains(Transaction)
+
+  /**
+   * Get the numbers of the blocks with a transaction involving a user.
+   *
+   * @param user The user.
+   * @return the block numbers, in ascending order (empty if the user is
+   *   not in the system).
+   */
+  public int[] blocksOf(String user) {
+    long stamp = lock.readLock();
+    try {
+      return directory.blocks(table.idOf(user));
+    } finally {
+      lock.unlockRead(stamp);
+    } // try/finally
+  } // blocksOf(String)
+
+  /**
+   * Get every transaction involving a user.
+   *
+   * @param user The user.
+   * @return the transactions, in chain order.
+   */
+  public List<Transaction> history(String user) {
+    return history(user, 0, Integer.MAX_VALUE);
+  } // history(String)
+
+  /**
+   * Get one page of the transactions involving a user. Only the blocks
+   * the user appears in are read.
+   *
+   * @param user The user.
+   * @param offset The number of the user's transactions to skip.
+   * @param limit The most transactions to return.
+   * @return the transactions, in chain order.
+   * @throws IllegalArgumentException if offset or limit is negative.
+   */
+  public List<Transaction> history(String user, int offset, int limit) {
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException("Invalid page: " + offset + ", " + limit);
+    } // if
+    long stamp = lock.readLock();
+    try {
+      int id = table.idOf(user);
+      int count = directory.count(id);
+      List<Transaction> page = new ArrayList<>(Math.min(limit, count));
+      int skipped = 0;
+      for (int i = 0; i < count && page.size() < limit; i++) {
+        int num = directory.block(id, i);
+        int[] ids = directory.users(num);
+        int j = 0;
+        for (Transaction t : store.get(num).getTransactions()) {
+          int source = ids[j++];
+          int target = ids[j++];
+          if (source != id && target != id) {
+            continue;
+          } // if
+          if (skipped < offset) {
+            skipped++;
+          } else if (page.size() < limit) {
+            page.add(t);
+          } // if/else
+        } // for
+      } // for
+      return page;
+    } finally {
+      lock.unlockRead(stamp);
+    } // try/finally
+  } // history(String, int, int)
+
   /**
    * Find one user's balance.
    *
    * @param user The user whose balance we want to find.
    * @return that user's balance (or 0, if the user is not in the system).
    */
-  public int balance(String user) {
-    int balance = 0;
-    Node current = head;
-    while (current != null) {
-      Transaction t = current.block.getTransaction();
-      if (t.getTarget().equals(user)) {
-        balance += t.getAmount();
-      } else if (t.getSource().equals(user)) {
-        balance -= t.getAmount();
-      } // end of if
-      current = current.next;
-    } // end of while
-    return balance;
+  public long balance(String user) {
+    return balances(List.of(user))[0];
   } // balance()
 
+  /**
+   * Find several users' balances at once. The balances are all as of the
+   * same block.
+   *
+   * @param users The users whose balances we want to find.
+   * @return each user's balance, in the same order as users.
+   */
+  public long[] balances(List<String> users) {
+    long[] result = new long[users.size()];
+    long stamp = lock.tryOptimisticRead();
+    int i = 0;
+    for (String user : users) {
+      result[i++] = ledger.get(table.idOf(user));
+    } // for
+    if (!lock.validate(stamp)) {
+      // A change was under way, so read again without one.
+      stamp = lock.readLock();
+      try {
+        i = 0;
+        for (String user : users) {
+          result[i++] = ledger.get(table.idOf(user));
+        } // for
+      } finally {
+        lock.unlockRead(stamp);
+      } // try/finally
+    } // if
+    return result;
+  } // balances(List<String>)
+
+  /**
+   * Find one user's balance as of an earlier block.
+   *
+   * @param user The user whose balance we want to find.
+   * @param height The number of the last block to count.
+   * @return that user's balance after that block.
+   * @throws IndexOutOfBoundsException if the chain has no such block.
+   */
+  public long balanceAt(String user, int height) {
+    return balancesAt(List.of(user), height)[0];
+  } // balanceAt(String, int)
+
+  /**
+   * Find several users' balances as of an earlier block. The balances
+   * come from the nearest checkpoint at or before the block, plus the
+   * blocks after the checkpoint.
+   *
+   * @param users The users whose balances we want to find.
+   * @param height The number of the last block to count.
+   * @return each user's balance after that block, in the same order as
+   *   users.
+   * @throws IndexOutOfBoundsException if the chain has no such block.
+   */
+  public long[] balancesAt(List<String> users, int height) {
+    int[] ids = new int[users.size()];
+    ChainSnapshot snap;
+    long[] result = new long[ids.length];
+    int from;
+    int[][] blockIds;
+    long stamp = lock.readLock();
+    try {
+      snap = store.snapshot();
+      if (height < 0 || height >= snap.getSize()) {
+        throw new IndexOutOfBoundsException("No block " + height);
+      } // if
+      int i = 0;
+      for (String user : users) {
+        ids[i] = table.idOf(user);
+        result[i] = checkpoints.get(height, ids[i]);
+        i++;
+      } // for
+      from = checkpoints.base(height);
+      blockIds = directory.users(from + 1, height + 1);
+    } finally {
+      lock.unlockRead(stamp);
+    } // try/finally
+
+    for (int n = from + 1; n <= height; n++) {
+      int[] blockUsers = blockIds[n - from - 1];
+      int j = 0;
+      for (Transaction t : snap.getBlock(n).getTransactions()) {
+        int source = blockUsers[j++];
+        int target = blockUsers[j++];
+        for (int i = 0; i < ids.length; i++) {
+          result[i] += Ledger.change(t.getAmount(), source, target, ids[i]);
+        } // for
+      } // for
+    } // for
+    return result;
+  } // balancesAt(List<String>, int)
+
+  /**
+   * Get the number of blocks between the checkpoints that serve
+   * balanceAt.
+   *
+   * @return the interval.
+   */
+  public int getCheckpointInterval() {
+    long stamp = lock.readLock();
+    try {
+      return checkpoints.getInterval();
+    } finally {
+      lock.unlockRead(stamp);
+    } // try/finally
+  } // getCheckpointInterval()
+
+  /**
+   * Set the number of blocks between the checkpoints that serve
+   * balanceAt, retaking every checkpoint. A shorter interval makes
+   * balanceAt faster and takes more memory.
+   *
+   * The checkpoints are retaken from a snapshot of the chain without
+   * holding the lock. Under the lock, any blocks appended since then are
+   * added before the new checkpoints replace the old ones; if any of the
+   * snapshot's blocks were removed, we start again from a new snapshot.
+   *
+   * @param interval The number of blocks between checkpoints.
+   * @throws IllegalArgumentException if interval is less than 1.
+   */
+  public void setCheckpointInterval(int interval) {
+    while (true) {
+      LedgerCheckpoints retaken = new LedgerCheckpoints(interval);
+      Ledger replay = new Ledger();
+      ChainSnapshot snap = store.snapshot();
+      int n = 0;
+      for (Iterator<Block> blocks = snap.blocks(); blocks.hasNext(); n++) {
+        // Every block in the snapshot has been appended, so its users
+        // are in the table.
+        Block blk = blocks.next();
+        int[] ids = table.idsOf(blk);
+        replay.apply(blk, ids);
+        retaken.record(n, ids, replay);
+      } // for
+      long stamp = lock.writeLock();
+      try {
+        ChainSnapshot now = store.snapshot();
+        if (now.getSize() >= n && now.getBlock(n - 1) == snap.getBlock(n - 1)) {
+          for (; n < now.getSize(); n++) {
+            Block blk = now.getBlock(n);
+            int[] ids = directory.users(n);
+            replay.apply(blk, ids);
+            retaken.record(n, ids, replay);
+          } // for
+          checkpoints = retaken;
+          return;
+        } // if
+      } finally {
+        lock.unlockWrite(stamp);
+      } // try/finally
+    } // while
+  } // setCheckpointInterval(int)
+
   /**
    * Get an iterator for all the blocks in the chain.
    *
    * @return an iterator for all the blocks in the chain.
    */
   public Iterator<Block> blocks() {
-    return new Iterator<>() {
-      Node current = head;
-
-      @Override
-      public boolean hasNext() {
-        return current != null;
-      } // hasNext()
-
-      @Override
-      public Block next() {
-        if (!hasNext()) {
-          throw new NoSuchElementException();
-        } // end of if
-        Block blk = current.block;
-        current = current.next;
-        return blk;
-      } // next()
-    };
+    return store.snapshot().blocks();
   } // end
 
   /**
@@ -259,23 +1044,6 @@ public class BlockChain implements Iterable<Transaction> {
    * @return an iterator for all the transactions in the chain.
    */
   public Iterator<Transaction> iterator() {
-    return new Iterator<>() {
-      Node current = head;
-
-      @Override
-      public boolean hasNext() {
-        return current != null;
-      } // hasNext()
-
-      @Override
-      public Transaction next() {
-        if (!hasNext()) {
-          throw new NoSuchElementException();
-        } // end of ig
-        Transaction t = current.block.getTransaction();
-        current = current.next;
-        return t;
-      } //
-    };
-  } //
+    return store.snapshot().iterator();
+  } // iterator()
 } // class BlockChain
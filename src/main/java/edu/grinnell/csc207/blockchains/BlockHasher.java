@@ -0,0 +1,179 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Computes block hashes for many nonces with the same block contents.
+ * The number, transaction (in its canonical encoding), and previous
+ * hash are serialized once, and the SHA-256 state after that prefix is
+ * computed once; each attempt only finishes the compression of the
+ * block(s) holding the nonce, so mining allocates nothing per attempt.
+ *
+ * Hashers are not thread safe. Each mining thread needs its own.
+ *
+ * @author Mina Bakrac
+ */
+class BlockHasher {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in a SHA-256 hash.
+   */
+  static final int HASH_BYTES = 32;
+
+  /**
+   * Stands in the place of a transaction's source length in the prefix
+   * of a block with several transactions, to mark that the Merkle root
+   * of the transactions follows. (Lengths are never negative.)
+   */
+  static final int MERKLE_MARKER = -1;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The hash engine, primed with everything before the nonce.
+   */
+  private final Sha256 engine;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a hasher for blocks with the given contents.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   */
+  BlockHasher(int num, Transaction transaction, Hash prevHash) {
+    this(prefix(num, transaction, prevHash));
+  } // BlockHasher(int, Transaction, Hash)
+
+  /**
+   * Create a hasher for blocks with the given prefix.
+   *
+   * @param prefix Everything in the block before the nonce.
+   */
+  BlockHasher(byte[] prefix) {
+    this.engine = new Sha256(prefix);
+  } // BlockHasher(byte[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Serialize everything in a block that precedes the nonce.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   * @return the serialized bytes.
+   */
+  static byte[] prefix(int num, Transaction transaction, Hash prevHash) {
+    ByteBuffer buffer =
+        ByteBuffer.allocate(Integer.BYTES + transaction.encodedLength() + prevHash.length())
+            .putInt(num);
+    transaction.writeTo(buffer);
+    return prevHash.writeTo(buffer).array();
+  } // prefix(int, Transaction, Hash)
+
+  /**
+   * Serialize everything in a block with some transactions that
+   * precedes the nonce. A block with one transaction serializes like any
+   * other single-transaction block; a block with several holds
+   * MERKLE_MARKER and the Merkle root of its transactions in place of
+   * the transaction.
+   *
+   * @param num The number of the block.
+   * @param transactions The transactions for the block.
+   * @param prevHash The hash of the previous block.
+   * @return the serialized bytes.
+   */
+  static byte[] prefix(int num, List<Transaction> transactions, Hash prevHash) {
+    return (transactions.size() == 1)
+        ? prefix(num, transactions.get(0), prevHash)
+        : prefix(num, transactions, MerkleTree.root(transactions), prevHash);
+  } // prefix(int, List<Transaction>, Hash)
+
+  /**
+   * Serialize everything in a block that precedes the nonce, given the
+   * Merkle root of the block's transactions.
+   *
+   * @param num The number of the block.
+   * @param transactions The transactions for the block.
+   * @param root The Merkle root of the transactions.
+   * @param prevHash The hash of the previous block.
+   * @return the serialized bytes.
+   */
+  static byte[] prefix(int num, List<Transaction> transactions, Hash root, Hash prevHash) {
+    if (transactions.size() == 1) {
+      return prefix(num, transactions.get(0), prevHash);
+    } // if
+    return prefix(num, body(transactions, root), prevHash);
+  } // prefix(int, List<Transaction>, Hash, Hash)
+
+  /**
+   * Serialize everything in a block that precedes the nonce, given the
+   * block's body.
+   *
+   * @param num The number of the block.
+   * @param body The block's body, as computed by body().
+   * @param prevHash The hash of the previous block.
+   * @return the serialized bytes.
+   */
+  static byte[] prefix(int num, byte[] body, Hash prevHash) {
+    ByteBuffer buffer =
+        ByteBuffer.allocate(Integer.BYTES + body.length + prevHash.length())
+            .putInt(num)
+            .put(body);
+    return prevHash.writeTo(buffer).array();
+  } // prefix(int, byte[], Hash)
+
+  /**
+   * Serialize the part of a block's prefix that commits to its
+   * transactions: the encoding of the transaction in a block with one,
+   * and MERKLE_MARKER followed by the Merkle root in a block with
+   * several.
+   *
+   * @param transactions The transactions for the block.
+   * @param root The Merkle root of the transactions.
+   * @return the serialized bytes.
+   */
+  static byte[] body(List<Transaction> transactions, Hash root) {
+    if (transactions.size() == 1) {
+      return transactions.get(0).getEncoded();
+    } // if
+    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + root.length())
+        .putInt(MERKLE_MARKER);
+    return root.writeTo(buffer).array();
+  } // body(List<Transaction>, Hash)
+
+  /**
+   * Hash the block with the given nonce into out.
+   *
+   * @param nonce The nonce to try.
+   * @param out Where to put the hash; must have room for HASH_BYTES bytes.
+   */
+  void hash(long nonce, byte[] out) {
+    engine.hash(nonce, out);
+  } // hash(long, byte[])
+
+  /**
+   * Hash the block with the given nonce.
+   *
+   * @param nonce The nonce to try.
+   * @return the hash of the block.
+   */
+  Hash hash(long nonce) {
+    byte[] out = new byte[HASH_BYTES];
+    hash(nonce, out);
+    return new Hash(out);
+  } // hash(long)
+} // class BlockHasher
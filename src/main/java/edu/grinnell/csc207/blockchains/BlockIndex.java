@@ -0,0 +1,195 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * An index from block hash to block, using open addressing with linear
+ * probing. Each slot keeps the hash code of its block's hash next to
+ * the block, so most probes compare ints and never touch the block.
+ * Deletion shifts later entries back rather than leaving tombstones, so
+ * a chain that grows and shrinks never degrades.
+ *
+ * The index is not thread safe; its chain guards it.
+ *
+ * @author Mina Bakrac
+ */
+class BlockIndex {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of slots in a new index.
+   */
+  static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * A slot whose hash code is this is empty. (Blocks whose hash code
+   * happens to be this are stored under EMPTY + 1.)
+   */
+  static final int EMPTY = 0;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks, by slot.
+   */
+  private Block[] blocks = new Block[INITIAL_CAPACITY];
+
+  /**
+   * The hash code of the hash of the block in each slot (or EMPTY).
+   */
+  private int[] codes = new int[INITIAL_CAPACITY];
+
+  /**
+   * The number of blocks in the index.
+   */
+  private int size = 0;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the code we store for a hash.
+   *
+   * @param hash The hash.
+   * @return its code, which is never EMPTY.
+   */
+  private static int code(Hash hash) {
+    int code = hash.hashCode();
+    return (code == EMPTY) ? EMPTY + 1 : code;
+  } // code(Hash)
+
+  /**
+   * Get the slot where the search for a code starts.
+   *
+   * @param code The code.
+   * @param mask One less than the number of slots.
+   * @return the slot.
+   */
+  private static int home(int code, int mask) {
+    int mixed = code * 0x9E3779B9;
+    return (mixed ^ (mixed >>> 16)) & mask;
+  } // home(int, int)
+
+  /**
+   * Find the slot holding the block with a given hash.
+   *
+   * @param hash The hash.
+   * @param code The code of the hash.
+   * @return the slot, or -1 if no block has that hash.
+   */
+  private int find(Hash hash, int code) {
+    int mask = codes.length - 1;
+    for (int i = home(code, mask); codes[i] != EMPTY; i = (i + 1) & mask) {
+      if (codes[i] == code && blocks[i].getHash().equals(hash)) {
+        return i;
+      } // if
+    } // for
+    return -1;
+  } // find(Hash, int)
+
+  /**
+   * Put a block in the first empty slot from its home.
+   *
+   * @param blk The block.
+   * @param code The code of its hash.
+   */
+  private void place(Block blk, int code) {
+    int mask = codes.length - 1;
+    int i = home(code, mask);
+    while (codes[i] != EMPTY) {
+      i = (i + 1) & mask;
+    } // while
+    codes[i] = code;
+    blocks[i] = blk;
+  } // place(Block, int)
+
+  /**
+   * Double the number of slots.
+   */
+  private void grow() {
+    Block[] oldBlocks = blocks;
+    int[] oldCodes = codes;
+    blocks = new Block[oldBlocks.length * 2];
+    codes = new int[oldCodes.length * 2];
+    for (int i = 0; i < oldCodes.length; i++) {
+      if (oldCodes[i] != EMPTY) {
+        place(oldBlocks[i], oldCodes[i]);
+      } // if
+    } // for
+  } // grow()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks in the index.
+   *
+   * @return the number of blocks.
+   */
+  int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Add a block, replacing any block with the same hash.
+   *
+   * @param blk The block to add.
+   */
+  void add(Block blk) {
+    int code = code(blk.getHash());
+    int i = find(blk.getHash(), code);
+    if (i >= 0) {
+      blocks[i] = blk;
+      return;
+    } // if
+    if (2 * (size + 1) > codes.length) {
+      grow();
+    } // if
+    place(blk, code);
+    size++;
+  } // add(Block)
+
+  /**
+   * Get the block with the given hash.
+   *
+   * @param hash The hash.
+   * @return the block, or null if there is none.
+   */
+  Block get(Hash hash) {
+    int i = find(hash, code(hash));
+    return (i < 0) ? null : blocks[i];
+  } // get(Hash)
+
+  /**
+   * Remove the block with the given hash, if there is one.
+   *
+   * @param hash The hash.
+   * @return true if a block was removed.
+   */
+  boolean remove(Hash hash) {
+    int i = find(hash, code(hash));
+    if (i < 0) {
+      return false;
+    } // if
+    int mask = codes.length - 1;
+    // Shift back every later entry in the run that the hole would cut
+    // off from its home.
+    int hole = i;
+    for (int j = (i + 1) & mask; codes[j] != EMPTY; j = (j + 1) & mask) {
+      int h = home(codes[j], mask);
+      if (((j - h) & mask) >= ((j - hole) & mask)) {
+        codes[hole] = codes[j];
+        blocks[hole] = blocks[j];
+        hole = j;
+      } // if
+    } // for
+    codes[hole] = EMPTY;
+    blocks[hole] = null;
+    size--;
+    return true;
+  } // remove(Hash)
+} // class BlockIndex
@@ -0,0 +1,176 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * The blocks of a chain, by number, in fixed-size chunks. Appending
+ * fills the last chunk and starts a new one when it is full, so it
+ * never copies blocks; only the small directory of chunks grows.
+ * Removing the last block only shrinks the size. Getting block n is two
+ * array reads.
+ *
+ * Every change publishes a new ChainSnapshot through a volatile field,
+ * so readers on other threads see either all of a change or none of it.
+ * Slots that a snapshot can see are never written again. Removing a
+ * block writes nothing, but an older snapshot may still see its slot,
+ * so the first append after removals copies the directory and the live
+ * part of the last chunk before writing. That is one copy per run of
+ * removals rather than one per removal; until then, removed blocks stay
+ * reachable from the store. Only one thread at a time may change the
+ * store; its chain sees to that.
+ *
+ * @author Mina Bakrac
+ */
+class BlockStore implements Iterable<Block> {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The log, base 2, of the number of blocks in a chunk.
+   */
+  static final int CHUNK_BITS = 10;
+
+  /**
+   * The number of blocks in a chunk.
+   */
+  static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  /**
+   * The number of chunks a new store has room for in its directory.
+   */
+  static final int INITIAL_CHUNKS = 4;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chunks of blocks. Every chunk below size is allocated. Only the
+   * writer reads this.
+   */
+  private Block[][] chunks = new Block[INITIAL_CHUNKS][];
+
+  /**
+   * The number of blocks. Only the writer reads this.
+   */
+  private int size = 0;
+
+  /**
+   * The largest size of any snapshot of the current chunks, so slots
+   * from here on are seen by no snapshot. Only the writer reads this.
+   */
+  private int shared = 0;
+
+  /**
+   * The blocks as of the last change.
+   */
+  private volatile ChainSnapshot snapshot = new ChainSnapshot(chunks, 0);
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the blocks as of the last change.
+   *
+   * @return the snapshot.
+   */
+  ChainSnapshot snapshot() {
+    return this.snapshot;
+  } // snapshot()
+
+  /**
+   * Get the number of blocks.
+   *
+   * @return the number of blocks.
+   */
+  int size() {
+    return snapshot.getSize();
+  } // size()
+
+  /**
+   * Get a block.
+   *
+   * @param n The number of the block.
+   * @return the block.
+   * @throws IndexOutOfBoundsException if there is no block n.
+   */
+  Block get(int n) {
+    return snapshot.getBlock(n);
+  } // get(int)
+
+  /**
+   * Get the last block.
+   *
+   * @return the last block.
+   * @throws IndexOutOfBoundsException if the store is empty.
+   */
+  Block last() {
+    return snapshot.getLast();
+  } // last()
+
+  /**
+   * Add a block at the end.
+   *
+   * @param blk The block.
+   */
+  void add(Block blk) {
+    int chunk = size >>> CHUNK_BITS;
+    int slot = size & (CHUNK_SIZE - 1);
+    if (size < shared) {
+      // An older snapshot may see the slot, so write it in a copy. The
+      // chunks after this one are left for older snapshots, too.
+      Block[][] copy = new Block[chunks.length][];
+      System.arraycopy(chunks, 0, copy, 0, chunk);
+      copy[chunk] = new Block[CHUNK_SIZE];
+      System.arraycopy(chunks[chunk], 0, copy[chunk], 0, slot);
+      chunks = copy;
+      shared = size;
+    } // if
+    if (chunk == chunks.length) {
+      chunks = Arrays.copyOf(chunks, 2 * chunks.length);
+    } // if
+    if (chunks[chunk] == null) {
+      chunks[chunk] = new Block[CHUNK_SIZE];
+    } // if
+    chunks[chunk][slot] = blk;
+    size++;
+    shared = Math.max(shared, size);
+    snapshot = new ChainSnapshot(chunks, size);
+  } // add(Block)
+
+  /**
+   * Remove the last block.
+   *
+   * @return the block removed.
+   * @throws IndexOutOfBoundsException if the store is empty.
+   */
+  Block removeLast() {
+    Block blk = last();
+    size--;
+    snapshot = new ChainSnapshot(chunks, size);
+    return blk;
+  } // removeLast()
+
+  /**
+   * Iterate the blocks from a given number on, as of now.
+   *
+   * @param from The number of the first block.
+   * @return the iterator.
+   */
+  Iterator<Block> iterator(int from) {
+    return snapshot.blocks(from);
+  } // iterator(int)
+
+  /**
+   * Iterate all of the blocks, as of now.
+   *
+   * @return the iterator.
+   */
+  @Override
+  public Iterator<Block> iterator() {
+    return snapshot.blocks();
+  } // iterator()
+} // class BlockStore
@@ -0,0 +1,162 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The blocks of a chain as they were at one moment. A snapshot never
+ * changes, even as blocks are appended to or removed from its chain, so
+ * any number of threads may read it without locking.
+ *
+ * Snapshots share the chain's chunks of blocks rather than copying them.
+ * The chain only ever writes to slots past the end of every snapshot it
+ * has handed out, and copies a chunk before reusing a slot in it.
+ *
+ * @author Mina Bakrac
+ */
+public final class ChainSnapshot implements Iterable<Transaction> {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chunks of blocks.
+   */
+  private final Block[][] chunks;
+
+  /**
+   * The number of blocks.
+   */
+  private final int size;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a snapshot of the first size blocks in some chunks.
+   *
+   * @param schunks The chunks, which must not change below size.
+   * @param ssize The number of blocks.
+   */
+  ChainSnapshot(Block[][] schunks, int ssize) {
+    this.chunks = schunks;
+    this.size = ssize;
+  } // ChainSnapshot(Block[][], int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks.
+   *
+   * @return the number of blocks, including the initial block.
+   */
+  public int getSize() {
+    return this.size;
+  } // getSize()
+
+  /**
+   * Get a block.
+   *
+   * @param n The number of the block.
+   * @return the block.
+   * @throws IndexOutOfBoundsException if there is no block n.
+   */
+  public Block getBlock(int n) {
+    if (n < 0 || n >= size) {
+      throw new IndexOutOfBoundsException("No block " + n);
+    } // if
+    return chunks[n >>> BlockStore.CHUNK_BITS][n & (BlockStore.CHUNK_SIZE - 1)];
+  } // getBlock(int)
+
+  /**
+   * Get the last block.
+   *
+   * @return the last block.
+   * @throws IndexOutOfBoundsException if there are no blocks.
+   */
+  public Block getLast() {
+    return getBlock(size - 1);
+  } // getLast()
+
+  /**
+   * Get the hash of the last block.
+   *
+   * @return the hash of the last block.
+   * @throws IndexOutOfBoundsException if there are no blocks.
+   */
+  public Hash getHash() {
+    return getLast().getHash();
+  } // getHash()
+
+  /**
+   * Iterate the blocks from a given number on.
+   *
+   * @param from The number of the first block.
+   * @return the iterator.
+   */
+  public Iterator<Block> blocks(int from) {
+    return new Iterator<>() {
+      int next = from;
+
+      @Override
+      public boolean hasNext() {
+        return next < size;
+      } // hasNext()
+
+      @Override
+      public Block next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        Block blk = chunks[next >>> BlockStore.CHUNK_BITS][next & (BlockStore.CHUNK_SIZE - 1)];
+        next++;
+        return blk;
+      } // next()
+    };
+  } // blocks(int)
+
+  /**
+   * Iterate all of the blocks.
+   *
+   * @return the iterator.
+   */
+  public Iterator<Block> blocks() {
+    return blocks(0);
+  } // blocks()
+
+  /**
+   * Iterate the transactions in every block.
+   *
+   * @return the iterator.
+   */
+  @Override
+  public Iterator<Transaction> iterator() {
+    return new Iterator<>() {
+      Iterator<Block> blocks = blocks();
+      List<Transaction> transactions = blocks.hasNext() ? blocks.next().getTransactions() : null;
+      int index = 0;
+
+      @Override
+      public boolean hasNext() {
+        return transactions != null;
+      } // hasNext()
+
+      @Override
+      public Transaction next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        } // if
+        Transaction t = transactions.get(index++);
+        if (index == transactions.size()) {
+          transactions = blocks.hasNext() ? blocks.next().getTransactions() : null;
+          index = 0;
+        } // if
+        return t;
+      } // next()
+    };
+  } // iterator()
+} // class ChainSnapshot
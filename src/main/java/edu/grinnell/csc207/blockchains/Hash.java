@@ -1,21 +1,83 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 /**
  * Encapsulated hashes.
  *
+ * Hashes of WORDS_BYTES bytes (the size of a SHA-256 hash, and so of
+ * every block hash) are stored as four longs rather than as an array,
+ * which saves the array header and makes equality a four-word compare.
+ * Hashes of any other length keep their bytes in an array.
+ *
+ * Hashes convert to and from uppercase hex (fromHex also accepts
+ * lowercase) with lookup tables, and read from and write to ByteBuffers.
+ *
  * @author Bonsen Yusuf
  * @author Samuel A. Rebelsky
  */
 public class Hash {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /** The length of the hashes we store as words. */
+  static final int WORDS_BYTES = 4 * Long.BYTES;
+
+  /** The hex digit for each nibble. */
+  private static final char[] DIGITS = "0123456789ABCDEF".toCharArray();
+
+  /** The nibble for each ASCII character, or -1 if it is not a hex digit. */
+  private static final byte[] NIBBLES = new byte[128];
+
+  static {
+    Arrays.fill(NIBBLES, (byte) -1);
+    for (int i = 0; i < DIGITS.length; i++) {
+      NIBBLES[DIGITS[i]] = (byte) i;
+      NIBBLES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+    } // for
+  } // static
+
+  /** Big-endian longs in byte arrays. */
+  private static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
   // +--------+------------------------------------------------------
   // | Fields |
   // +--------+
 
-  /** The internal representation of the hash as a byte array. */
+  /**
+   * The internal representation of the hash as a byte array, or null if
+   * the hash is stored in the words.
+   */
   private final byte[] data;
 
+  /** Bytes 0-7 of a hash stored as words, big-endian. */
+  private final long w0;
+
+  /** Bytes 8-15 of a hash stored as words, big-endian. */
+  private final long w1;
+
+  /** Bytes 16-23 of a hash stored as words, big-endian. */
+  private final long w2;
+
+  /** Bytes 24-31 of a hash stored as words, big-endian. */
+  private final long w3;
+
+  /** The hash code, computed once. */
+  private final int code;
+
+  /**
+   * The hex form, once someone asks for it. Racing threads at worst
+   * compute it twice.
+   */
+  private String hex = null;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -30,11 +92,176 @@ public class Hash {
    * @throws IllegalArgumentException if the input data is null.
    */
   public Hash(byte[] inputData) {
+    this(inputData, 0, lengthOf(inputData));
+  } // Hash(byte[])
+
+  /**
+   * Create a hash from part of an array, copying only what it keeps.
+   * Hashes of WORDS_BYTES bytes are read straight into the words, so
+   * validators can check candidates without copying them.
+   *
+   * @param bytes The array holding the hash.
+   * @param offset Where the hash starts in bytes.
+   * @param length The number of bytes in the hash.
+   */
+  Hash(byte[] bytes, int offset, int length) {
+    if (length == WORDS_BYTES) {
+      this.data = null;
+      this.w0 = (long) LONGS.get(bytes, offset);
+      this.w1 = (long) LONGS.get(bytes, offset + Long.BYTES);
+      this.w2 = (long) LONGS.get(bytes, offset + 2 * Long.BYTES);
+      this.w3 = (long) LONGS.get(bytes, offset + 3 * Long.BYTES);
+      this.code = wordsCode(w0, w1, w2, w3);
+    } else {
+      this.data = Arrays.copyOfRange(bytes, offset, offset + length);
+      this.w0 = 0;
+      this.w1 = 0;
+      this.w2 = 0;
+      this.w3 = 0;
+      this.code = Arrays.hashCode(data);
+    } // end if/else
+  } // Hash(byte[], int, int)
+
+  /**
+   * Create a WORDS_BYTES-byte hash from its big-endian words.
+   *
+   * @param word0 Bytes 0-7.
+   * @param word1 Bytes 8-15.
+   * @param word2 Bytes 16-23.
+   * @param word3 Bytes 24-31.
+   */
+  Hash(long word0, long word1, long word2, long word3) {
+    this.data = null;
+    this.w0 = word0;
+    this.w1 = word1;
+    this.w2 = word2;
+    this.w3 = word3;
+    this.code = wordsCode(word0, word1, word2, word3);
+  } // Hash(long, long, long, long)
+
+  /**
+   * Parse a hash from hex digits, as produced by toString().
+   *
+   * @param digits The hex digits, two per byte, in either case.
+   * @return the hash.
+   * @throws IllegalArgumentException if digits is not an even number of
+   *   hex digits.
+   */
+  public static Hash fromHex(CharSequence digits) {
+    if (digits.length() % 2 != 0) {
+      throw new IllegalArgumentException("Odd number of hex digits: " + digits);
+    } // end if
+    byte[] bytes = new byte[digits.length() / 2];
+    for (int i = 0; i < bytes.length; i++) {
+      int hi = nibble(digits, 2 * i);
+      int lo = nibble(digits, 2 * i + 1);
+      bytes[i] = (byte) ((hi << 4) | lo);
+    } // for
+    return new Hash(bytes);
+  } // fromHex(CharSequence)
+
+  /**
+   * Read a hash of the given length from the buffer's position.
+   *
+   * @param buffer The buffer to read from.
+   * @param length The number of bytes in the hash.
+   * @return the hash.
+   * @throws java.nio.BufferUnderflowException if the buffer has fewer
+   *   than length bytes remaining.
+   */
+  public static Hash readFrom(ByteBuffer buffer, int length) {
+    if (length != WORDS_BYTES) {
+      byte[] bytes = new byte[length];
+      buffer.get(bytes);
+      return new Hash(bytes);
+    } // end if
+    if (buffer.remaining() < WORDS_BYTES) {
+      throw new BufferUnderflowException();
+    } // end if
+    boolean big = buffer.order() == ByteOrder.BIG_ENDIAN;
+    long word0 = buffer.getLong();
+    long word1 = buffer.getLong();
+    long word2 = buffer.getLong();
+    long word3 = buffer.getLong();
+    return big
+        ? new Hash(word0, word1, word2, word3)
+        : new Hash(Long.reverseBytes(word0), Long.reverseBytes(word1),
+            Long.reverseBytes(word2), Long.reverseBytes(word3));
+  } // readFrom(ByteBuffer, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the length of the data for a new hash.
+   *
+   * @param inputData The data.
+   * @return its length.
+   * @throws IllegalArgumentException if the data is null.
+   */
+  private static int lengthOf(byte[] inputData) {
     if (inputData == null) {
       throw new IllegalArgumentException("Hash data cannot be null");
     } // end if
-    this.data = Arrays.copyOf(inputData, inputData.length);
-  } // Hash(byte[])
+    return inputData.length;
+  } // lengthOf(byte[])
+
+  /**
+   * Get the value of one hex digit.
+   *
+   * @param digits The hex digits.
+   * @param i The index of the digit.
+   * @return the value of the digit.
+   * @throws IllegalArgumentException if it is not a hex digit.
+   */
+  private static int nibble(CharSequence digits, int i) {
+    char c = digits.charAt(i);
+    int value = (c < NIBBLES.length) ? NIBBLES[c] : -1;
+    if (value < 0) {
+      throw new IllegalArgumentException("Not a hex digit: '" + c + "' at " + i);
+    } // end if
+    return value;
+  } // nibble(CharSequence, int)
+
+  /**
+   * Compute the hash code of a hash stored as words. The words are
+   * already well mixed, so folding them together is enough.
+   *
+   * @param word0 Bytes 0-7.
+   * @param word1 Bytes 8-15.
+   * @param word2 Bytes 16-23.
+   * @param word3 Bytes 24-31.
+   * @return the hash code.
+   */
+  private static int wordsCode(long word0, long word1, long word2, long word3) {
+    return Long.hashCode(word0 ^ Long.rotateLeft(word1, 16) ^ Long.rotateLeft(word2, 32)
+        ^ Long.rotateLeft(word3, 48));
+  } // wordsCode(long, long, long, long)
+
+  /**
+   * Get eight bytes of the hash as a big-endian long, without copying
+   * the hash.
+   *
+   * @param i The index of the word; bytes 8i to 8i + 7 must be in the
+   *   hash.
+   * @return the word.
+   */
+  long word(int i) {
+    if (data != null) {
+      return (long) LONGS.get(data, i * Long.BYTES);
+    } // if
+    switch (i) {
+      case 0:
+        return w0;
+      case 1:
+        return w1;
+      case 2:
+        return w2;
+      default:
+        return w3;
+    } // switch
+  } // word(int)
 
   // +---------+-----------------------------------------------------
   // | Methods |
@@ -46,7 +273,7 @@ public class Hash {
    * @return the number of bytes in the hash.
    */
   public int length() {
-    return data.length;
+    return (data == null) ? WORDS_BYTES : data.length;
   } // length()
 
   /**
@@ -59,10 +286,13 @@ public class Hash {
    * @throws IndexOutOfBoundsException if the index is out of range.
    */
   public byte get(int i) {
-    if (i < 0 || i >= data.length) {
+    if (i < 0 || i >= length()) {
       throw new IndexOutOfBoundsException("Index out of bounds: " + i);
     } // end if
-    return data[i];
+    if (data != null) {
+      return data[i];
+    } // end if
+    return (byte) (word(i / Long.BYTES) >>> ((Long.BYTES - 1 - i % Long.BYTES) * Byte.SIZE));
   } // get()
 
   /**
@@ -74,30 +304,86 @@ public class Hash {
    * @return a copy of the bytes in the hash.
    */
   public byte[] getBytes() {
-    return Arrays.copyOf(data, data.length);
+    byte[] bytes = new byte[length()];
+    writeTo(bytes, 0);
+    return bytes;
   } // getBytes()
 
+  /**
+   * Copy the bytes in the hash into an array, without making an
+   * intermediate copy.
+   *
+   * @param out The array to copy into.
+   * @param offset Where in out the first byte goes.
+   * @throws IndexOutOfBoundsException if out does not have room for
+   *   length() bytes at offset.
+   */
+  public void writeTo(byte[] out, int offset) {
+    if (data != null) {
+      System.arraycopy(data, 0, out, offset, data.length);
+      return;
+    } // end if
+    if (offset < 0 || offset > out.length - WORDS_BYTES) {
+      throw new IndexOutOfBoundsException("No room for a hash at " + offset);
+    } // end if
+    LONGS.set(out, offset, w0);
+    LONGS.set(out, offset + Long.BYTES, w1);
+    LONGS.set(out, offset + 2 * Long.BYTES, w2);
+    LONGS.set(out, offset + 3 * Long.BYTES, w3);
+  } // writeTo(byte[], int)
+
+  /**
+   * Put the bytes in the hash at the buffer's position (whatever the
+   * buffer's byte order), without making an intermediate copy. This is
+   * also the way to feed a hash to a MessageDigest, through
+   * MessageDigest.update(ByteBuffer).
+   *
+   * @param buffer The buffer to write to.
+   * @return the buffer.
+   * @throws java.nio.BufferOverflowException if the buffer does not have
+   *   room for length() bytes.
+   */
+  public ByteBuffer writeTo(ByteBuffer buffer) {
+    if (data != null) {
+      return buffer.put(data);
+    } // end if
+    boolean big = buffer.order() == ByteOrder.BIG_ENDIAN;
+    buffer.putLong(big ? w0 : Long.reverseBytes(w0));
+    buffer.putLong(big ? w1 : Long.reverseBytes(w1));
+    buffer.putLong(big ? w2 : Long.reverseBytes(w2));
+    buffer.putLong(big ? w3 : Long.reverseBytes(w3));
+    return buffer;
+  } // writeTo(ByteBuffer)
+
   /**
    * Convert to a hex string.
    *
    * This method converts the byte array into a string of uppercase hexadecimal digits,
-   * with each byte represented by two characters.
+   * with each byte represented by two characters. The string is computed once.
    * @return the hash as a hex string.
    */
   @Override
   public String toString() {
-    StringBuilder hexString = new StringBuilder();
-    for (byte b: data) {
-      hexString.append(String.format("%02X", Byte.toUnsignedInt(b)));
-    } // end of for
-    return hexString.toString();
+    String result = hex;
+    if (result == null) {
+      int n = length();
+      char[] digits = new char[2 * n];
+      for (int i = 0; i < n; i++) {
+        int b = get(i);
+        digits[2 * i] = DIGITS[(b >>> 4) & 0xF];
+        digits[2 * i + 1] = DIGITS[b & 0xF];
+      } // end of for
+      result = new String(digits);
+      hex = result;
+    } // end if
+    return result;
   } // toString()
 
   /**
    * Determine if this is equal to another object.
    *
    * This method checks if the other object is an instance of Hash and compares the
-   * underlying byte arrays for equality.
+   * underlying words or byte arrays for equality.
    *
    * @param other The object to compare to.
    * @return true if the two objects are conceptually equal and false otherwise.
@@ -111,18 +397,23 @@ public class Hash {
       return false;
     } // end
     Hash otherHash = (Hash) other;
-    return Arrays.equals(this.data, otherHash.data);
+    if (this.data != null || otherHash.data != null) {
+      return Arrays.equals(this.data, otherHash.data);
+    } // end
+    return this.code == otherHash.code
+        && this.w0 == otherHash.w0 && this.w1 == otherHash.w1
+        && this.w2 == otherHash.w2 && this.w3 == otherHash.w3;
   } // equals()
 
   /**
    * Get the hash code of this object.
    *
-   * The hash code is derived from the string representation of the hash.
+   * The hash code is computed once, when the hash is built.
    *
    * @return the hash code.
    */
   @Override
   public int hashCode() {
-    return Arrays.hashCode(data);
+    return this.code;
   } // hashCode()
 } // class Hash
@@ -16,4 +16,25 @@ public interface HashValidator {
    */
   boolean isValid(Hash hash);
 
+  /**
+   * Determine if the raw bytes of a hash meet the criterion. Miners call
+   * this for every candidate so that they only build a Hash for the
+   * winner. The bytes are only valid for the duration of the call.
+   *
+   * The default reads the bytes into a Hash, without an intermediate
+   * copy; validators that are checked often should override it.
+   *
+   * @param bytes
+   *   An array holding the hash.
+   * @param offset
+   *   Where the hash starts in bytes.
+   * @param length
+   *   The number of bytes in the hash.
+   *
+   * @return true if the hash is valid and false otherwise.
+   */
+  default boolean isValid(byte[] bytes, int offset, int length) {
+    return isValid(new Hash(bytes, offset, length));
+  } // isValid(byte[], int, int)
+
 } // interface HashValidator
@@ -0,0 +1,318 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A proof that a transaction is in the block with a given hash, which a
+ * client can check without the chain.
+ *
+ * The proof holds the transaction's position in its block, the Merkle
+ * branch from the transaction to its block's root (empty for a block
+ * with one transaction, whose header holds the transaction itself), the
+ * hash of the block before, and the block's header. Both its size and
+ * the time to check it are logarithmic in the number of transactions in
+ * the block: one hash per level of the Merkle tree, plus the block's.
+ *
+ * The client must trust the hash of the transaction's block, say from a
+ * store of headers it has already checked. A proof against the tip
+ * alone would need a header for every block from the transaction's to
+ * the tip, which grows with the block's age, since a block's hash
+ * commits only to the block before it.
+ *
+ * A header is a block's number, its body (the part of its hash input
+ * that commits to its transactions), and its nonce.
+ *
+ * @author Mina Bakrac
+ */
+public class InclusionProof {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The transaction being proven.
+   */
+  private final Transaction transaction;
+
+  /**
+   * The position of the transaction in its block.
+   */
+  private final int index;
+
+  /**
+   * The number of transactions in the block.
+   */
+  private final int count;
+
+  /**
+   * The Merkle branch from the transaction to its block's root.
+   */
+  private final List<Hash> branch;
+
+  /**
+   * The hash of the block before the transaction's block.
+   */
+  private final Hash prevHash;
+
+  /**
+   * The header of the transaction's block.
+   */
+  private final Header header;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Assemble a proof.
+   *
+   * @param ptransaction The transaction being proven.
+   * @param pindex The position of the transaction in its block.
+   * @param pcount The number of transactions in the block.
+   * @param pbranch The Merkle branch from the transaction to the root.
+   * @param pprevHash The hash of the block before the transaction's.
+   * @param pheader The header of the transaction's block.
+   */
+  InclusionProof(Transaction ptransaction, int pindex, int pcount, List<Hash> pbranch,
+      Hash pprevHash, Header pheader) {
+    this.transaction = ptransaction;
+    this.index = pindex;
+    this.count = pcount;
+    this.branch = List.copyOf(pbranch);
+    this.prevHash = pprevHash;
+    this.header = pheader;
+  } // InclusionProof(Transaction, int, int, List<Hash>, Hash, Header)
+
+  /**
+   * Build the proof for one transaction in a block.
+   *
+   * @param blk The block holding the transaction.
+   * @param pindex The position of the transaction in the block.
+   * @return the proof.
+   */
+  static InclusionProof of(Block blk, int pindex) {
+    List<Transaction> ts = blk.getTransactions();
+    return new InclusionProof(ts.get(pindex), pindex, ts.size(),
+        (ts.size() == 1) ? List.of() : MerkleTree.branch(ts, pindex), blk.getPrevHash(),
+        new Header(blk));
+  } // of(Block, int)
+
+  /**
+   * Read a proof written by writeTo from the buffer's position.
+   *
+   * @param buffer The buffer to read from.
+   * @return the proof.
+   * @throws IllegalArgumentException if the buffer does not hold a
+   *   complete, well-formed proof.
+   */
+  public static InclusionProof readFrom(ByteBuffer buffer) {
+    try {
+      Transaction ptransaction = Transaction.readFrom(buffer);
+      int pindex = buffer.getInt();
+      int pcount = buffer.getInt();
+      int branchSize = length(buffer, BlockHasher.HASH_BYTES);
+      List<Hash> pbranch = new ArrayList<>(branchSize);
+      for (int i = 0; i < branchSize; i++) {
+        pbranch.add(Hash.readFrom(buffer, BlockHasher.HASH_BYTES));
+      } // for
+      Hash pprevHash = Hash.readFrom(buffer, length(buffer, 1));
+      int num = buffer.getInt();
+      byte[] body = new byte[length(buffer, 1)];
+      buffer.get(body);
+      Header pheader = new Header(num, body, buffer.getLong());
+      return new InclusionProof(ptransaction, pindex, pcount, pbranch, pprevHash, pheader);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated proof", e);
+    } // try/catch
+  } // readFrom(ByteBuffer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * The parts of a block that its hash covers, other than the previous
+   * hash.
+   */
+  static final class Header {
+    /**
+     * The fewest bytes a header takes to write.
+     */
+    static final int MIN_BYTES = 2 * Integer.BYTES + Long.BYTES;
+
+    /**
+     * The number of the block.
+     */
+    final int num;
+
+    /**
+     * The body of the block.
+     */
+    final byte[] body;
+
+    /**
+     * The nonce of the block.
+     */
+    final long nonce;
+
+    /**
+     * Build a header from its parts.
+     *
+     * @param hnum The number of the block.
+     * @param hbody The body of the block.
+     * @param hnonce The nonce of the block.
+     */
+    Header(int hnum, byte[] hbody, long hnonce) {
+      this.num = hnum;
+      this.body = hbody;
+      this.nonce = hnonce;
+    } // Header(int, byte[], long)
+
+    /**
+     * Build the header of a block.
+     *
+     * @param blk The block.
+     */
+    Header(Block blk) {
+      this(blk.getNum(), BlockHasher.body(blk.getTransactions(), blk.getMerkleRoot()),
+          blk.getNonce());
+    } // Header(Block)
+
+    /**
+     * Compute the hash of the block with this header.
+     *
+     * @param prev The hash of the previous block.
+     * @return the block's hash.
+     */
+    Hash hash(Hash prev) {
+      MessageDigest md = MerkleTree.sha256();
+      md.update(BlockHasher.prefix(num, body, prev));
+      md.update(ByteBuffer.allocate(Long.BYTES).putLong(nonce).array());
+      return new Hash(md.digest());
+    } // hash(Hash)
+  } // class Header
+
+  /**
+   * Read a count or length, making sure that the buffer could hold that
+   * many items of the given size.
+   *
+   * @param buffer The buffer to read from.
+   * @param itemBytes The fewest bytes each item takes.
+   * @return the count.
+   * @throws IllegalArgumentException if the count is out of range.
+   */
+  private static int length(ByteBuffer buffer, int itemBytes) {
+    int n = buffer.getInt();
+    if (n < 0 || (long) n * itemBytes > buffer.remaining()) {
+      throw new IllegalArgumentException("Bad length in proof: " + n);
+    } // if
+    return n;
+  } // length(ByteBuffer, int)
+
+  /**
+   * Compute what the body of the transaction's block must be.
+   *
+   * @return the body, or null if the branch does not fit the position.
+   */
+  private byte[] expectedBody() {
+    if (count == 1) {
+      return (index == 0 && branch.isEmpty()) ? transaction.getEncoded() : null;
+    } // if
+    Hash root = MerkleTree.fold(MerkleTree.leaf(transaction), index, count, branch);
+    if (root == null) {
+      return null;
+    } // if
+    return ByteBuffer.allocate(Integer.BYTES + root.length())
+        .putInt(BlockHasher.MERKLE_MARKER)
+        .put(root.getBytes())
+        .array();
+  } // expectedBody()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the transaction this proves.
+   *
+   * @return the transaction.
+   */
+  public Transaction getTransaction() {
+    return this.transaction;
+  } // getTransaction()
+
+  /**
+   * Get the number of the block holding the transaction.
+   *
+   * @return the number of the block.
+   */
+  public int getBlockNum() {
+    return header.num;
+  } // getBlockNum()
+
+  /**
+   * Get the position of the transaction in its block.
+   *
+   * @return the position.
+   */
+  public int getIndex() {
+    return this.index;
+  } // getIndex()
+
+  /**
+   * Get the hash of the block the proof covers.
+   *
+   * @return the hash of the transaction's block.
+   */
+  public Hash getBlockHash() {
+    return header.hash(prevHash);
+  } // getBlockHash()
+
+  /**
+   * Determine if this proves that the transaction is in the block with
+   * the given (trusted) hash.
+   *
+   * @param trustedHash The hash of block getBlockNum() of the chain.
+   * @return true if the proof holds.
+   */
+  public boolean verify(Hash trustedHash) {
+    return Arrays.equals(expectedBody(), header.body) && getBlockHash().equals(trustedHash);
+  } // verify(Hash)
+
+  /**
+   * Get the number of bytes writeTo writes.
+   *
+   * @return the length of the encoding.
+   */
+  public int encodedLength() {
+    int length = transaction.encodedLength() + 3 * Integer.BYTES
+        + branch.size() * BlockHasher.HASH_BYTES + Integer.BYTES + prevHash.length();
+    return length + Header.MIN_BYTES + header.body.length;
+  } // encodedLength()
+
+  /**
+   * Write the proof at the buffer's position, for readFrom to read.
+   *
+   * @param buffer The buffer to write to.
+   * @return the buffer.
+   */
+  public ByteBuffer writeTo(ByteBuffer buffer) {
+    transaction.writeTo(buffer)
+        .putInt(index)
+        .putInt(count)
+        .putInt(branch.size());
+    for (Hash hash : branch) {
+      hash.writeTo(buffer);
+    } // for
+    prevHash.writeTo(buffer.putInt(prevHash.length()));
+    return buffer.putInt(header.num)
+        .putInt(header.body.length)
+        .put(header.body)
+        .putLong(header.nonce);
+  } // writeTo(ByteBuffer)
+} // class InclusionProof
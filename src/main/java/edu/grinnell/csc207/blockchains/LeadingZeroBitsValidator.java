@@ -0,0 +1,131 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Validates hashes that start with a given number of zero bits. Raw
+ * hashes are checked a long at a time.
+ *
+ * @author Bonsen Yusuf
+ */
+public class LeadingZeroBitsValidator implements HashValidator {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * Reads big-endian longs out of byte arrays.
+   */
+  private static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of leading bits that must be zero.
+   */
+  private final int zeroBits;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a validator for hashes that start with the given number of
+   * zero bits.
+   *
+   * @param bits The number of leading bits that must be zero.
+   * @throws IllegalArgumentException if bits is negative.
+   */
+  public LeadingZeroBitsValidator(int bits) {
+    if (bits < 0) {
+      throw new IllegalArgumentException("Cannot require " + bits + " zero bits");
+    } // if
+    this.zeroBits = bits;
+  } // LeadingZeroBitsValidator(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of leading bits that must be zero.
+   *
+   * @return the number of bits.
+   */
+  public int getZeroBits() {
+    return this.zeroBits;
+  } // getZeroBits()
+
+  /**
+   * Determine if a hash starts with enough zero bits.
+   *
+   * @param hash The hash we're checking.
+   * @return true if the hash is valid and false otherwise.
+   */
+  @Override
+  public boolean isValid(Hash hash) {
+    if ((long) hash.length() * Byte.SIZE < zeroBits) {
+      return false;
+    } // if
+    int bits = zeroBits;
+    int i = 0;
+    while (bits >= Byte.SIZE) {
+      if (hash.get(i++) != 0) {
+        return false;
+      } // if
+      bits -= Byte.SIZE;
+    } // while
+    return (bits == 0) || ((hash.get(i) & 0xFF) >>> (Byte.SIZE - bits)) == 0;
+  } // isValid(Hash)
+
+  /**
+   * Determine if raw hash bytes start with enough zero bits.
+   *
+   * @param bytes An array holding the hash.
+   * @param offset Where the hash starts in bytes.
+   * @param length The number of bytes in the hash.
+   * @return true if the hash is valid and false otherwise.
+   */
+  @Override
+  public boolean isValid(byte[] bytes, int offset, int length) {
+    if ((long) length * Byte.SIZE < zeroBits) {
+      return false;
+    } // if
+    int bits = zeroBits;
+    int i = offset;
+    while (bits >= Long.SIZE) {
+      if ((long) LONGS.get(bytes, i) != 0) {
+        return false;
+      } // if
+      i += Long.BYTES;
+      bits -= Long.SIZE;
+    } // while
+    if (bits == 0) {
+      return true;
+    } else if (i + Long.BYTES <= offset + length) {
+      return ((long) LONGS.get(bytes, i) >>> (Long.SIZE - bits)) == 0;
+    } // if
+    while (bits >= Byte.SIZE) {
+      if (bytes[i++] != 0) {
+        return false;
+      } // if
+      bits -= Byte.SIZE;
+    } // while
+    return (bits == 0) || ((bytes[i] & 0xFF) >>> (Byte.SIZE - bits)) == 0;
+  } // isValid(byte[], int, int)
+
+  /**
+   * Get a string representation of the validator.
+   *
+   * @return a string representation of the validator.
+   */
+  @Override
+  public String toString() {
+    return "LeadingZeroBitsValidator[" + zeroBits + "]";
+  } // toString()
+} // class LeadingZeroBitsValidator
@@ -0,0 +1,127 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * The balance of every user, kept up to date as blocks are added to and
+ * removed from a chain, so that looking up a balance never rescans the
+ * chain. Balances are indexed by the ids in the chain's UserTable and
+ * kept as longs, so no run of int amounts can overflow them.
+ *
+ * A transaction credits its target and, unless the source is the
+ * target, debits its source.
+ *
+ * The ledger is not thread safe; its chain guards it. The chain may
+ * read a balance while a block is being applied (and then discard it),
+ * so get never fails, even mid-change.
+ *
+ * @author Mina Bakrac
+ */
+class Ledger {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of users we have room for at first.
+   */
+  static final int INITIAL_CAPACITY = 64;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The balance of the user with each id.
+   */
+  private long[] totals = new long[INITIAL_CAPACITY];
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Add an amount to a user's balance.
+   *
+   * @param id The id of the user.
+   * @param amount The amount (negative to take it away).
+   */
+  private void add(int id, long amount) {
+    if (id >= totals.length) {
+      totals = Arrays.copyOf(totals, Math.max(2 * totals.length, id + 1));
+    } // if
+    totals[id] += amount;
+  } // add(int, long)
+
+  /**
+   * Apply every transaction in a block in one direction.
+   *
+   * @param blk The block.
+   * @param ids The ids of the users of the block, from UserTable.
+   * @param sign 1 to apply the block or -1 to undo it.
+   */
+  private void post(Block blk, int[] ids, int sign) {
+    int i = 0;
+    for (Transaction t : blk.getTransactions()) {
+      long amount = sign * (long) t.getAmount();
+      int source = ids[i++];
+      int target = ids[i++];
+      add(target, amount);
+      if (source != target) {
+        add(source, -amount);
+      } // if
+    } // for
+  } // post(Block, int[], int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Find how one transaction changes a user's balance.
+   *
+   * @param amount The amount of the transaction.
+   * @param source The id of its source.
+   * @param target The id of its target.
+   * @param id The id of the user (or UserTable.UNKNOWN).
+   * @return the change, which is 0 if the user is not in the transaction.
+   */
+  static long change(int amount, int source, int target, int id) {
+    if (target == id) {
+      return amount;
+    } else if (source == id) {
+      return -(long) amount;
+    } // if/else
+    return 0;
+  } // change(int, int, int, int)
+
+  /**
+   * Apply the transactions in a block added to the chain.
+   *
+   * @param blk The block.
+   * @param ids The ids of the users of the block, from UserTable.
+   */
+  void apply(Block blk, int[] ids) {
+    post(blk, ids, 1);
+  } // apply(Block, int[])
+
+  /**
+   * Undo the transactions in a block removed from the chain.
+   *
+   * @param blk The block.
+   * @param ids The ids of the users of the block, from UserTable.
+   */
+  void revert(Block blk, int[] ids) {
+    post(blk, ids, -1);
+  } // revert(Block, int[])
+
+  /**
+   * Get a user's balance.
+   *
+   * @param id The id of the user (or UserTable.UNKNOWN).
+   * @return the balance, or 0 if the user is in no transaction.
+   */
+  long get(int id) {
+    return (id >= 0 && id < totals.length) ? totals[id] : 0;
+  } // get(int)
+} // class Ledger
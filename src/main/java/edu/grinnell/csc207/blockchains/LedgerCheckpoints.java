@@ -0,0 +1,225 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The balances of a chain's users every so many blocks, so that a
+ * balance as of any block can be found from the nearest checkpoint at
+ * or before that block plus a replay of fewer than interval blocks. A
+ * shorter interval makes those queries faster and takes more memory.
+ *
+ * Checkpoint c is block c * interval. Rather than copy the whole ledger,
+ * a checkpoint stores the balances of only the users in a transaction
+ * since the checkpoint before it, so memory grows with the number of
+ * transactions rather than with checkpoints times users. Each user keeps
+ * the checkpoints at which their balance was stored, in order, so the
+ * balance at any checkpoint is one binary search away.
+ *
+ * The checkpoints are not thread safe; their chain guards them.
+ *
+ * @author Mina Bakrac
+ */
+class LedgerCheckpoints {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of blocks between checkpoints, unless the chain says
+   * otherwise.
+   */
+  static final int DEFAULT_INTERVAL = 1024;
+
+  /**
+   * The number of checkpoints (and of users) we have room for at first.
+   */
+  static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * The number of entries a user's history has room for at first.
+   */
+  static final int INITIAL_HISTORY = 4;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks between checkpoints.
+   */
+  private final int interval;
+
+  /**
+   * The ids of the users whose balances each checkpoint stores.
+   */
+  private int[][] touched = new int[INITIAL_CAPACITY][];
+
+  /**
+   * The number of checkpoints.
+   */
+  private int count = 0;
+
+  /**
+   * The checkpoints at which each user's balance is stored, in order.
+   */
+  private int[][] at = new int[INITIAL_CAPACITY][];
+
+  /**
+   * The balances stored for each user, parallel to at.
+   */
+  private long[][] values = new long[INITIAL_CAPACITY][];
+
+  /**
+   * The number of entries in each user's history.
+   */
+  private int[] lengths = new int[INITIAL_CAPACITY];
+
+  /**
+   * The users in a transaction since the last checkpoint.
+   */
+  private final BitSet pending = new BitSet();
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty set of checkpoints.
+   *
+   * @param cinterval The number of blocks between checkpoints.
+   * @throws IllegalArgumentException if cinterval is less than 1.
+   */
+  LedgerCheckpoints(int cinterval) {
+    if (cinterval < 1) {
+      throw new IllegalArgumentException("Invalid checkpoint interval: " + cinterval);
+    } // if
+    this.interval = cinterval;
+  } // LedgerCheckpoints(int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Add an entry to the end of a user's history.
+   *
+   * @param id The id of the user.
+   * @param c The checkpoint.
+   * @param balance The user's balance at the checkpoint.
+   */
+  private void store(int id, int c, long balance) {
+    if (id >= at.length) {
+      int capacity = Math.max(2 * at.length, id + 1);
+      at = Arrays.copyOf(at, capacity);
+      values = Arrays.copyOf(values, capacity);
+      lengths = Arrays.copyOf(lengths, capacity);
+    } // if
+    int len = lengths[id];
+    if (at[id] == null) {
+      at[id] = new int[INITIAL_HISTORY];
+      values[id] = new long[INITIAL_HISTORY];
+    } else if (len == at[id].length) {
+      at[id] = Arrays.copyOf(at[id], 2 * len);
+      values[id] = Arrays.copyOf(values[id], 2 * len);
+    } // if/else
+    at[id][len] = c;
+    values[id][len] = balance;
+    lengths[id] = len + 1;
+  } // store(int, int, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of blocks between checkpoints.
+   *
+   * @return the interval.
+   */
+  int getInterval() {
+    return this.interval;
+  } // getInterval()
+
+  /**
+   * Get the number of the checkpoint block at or before a block.
+   *
+   * @param height The number of the block.
+   * @return the number of the checkpoint block.
+   */
+  int base(int height) {
+    return height - height % interval;
+  } // base(int)
+
+  /**
+   * Note a block that was just applied to the ledger, and take a
+   * checkpoint if the block falls on one.
+   *
+   * @param num The number of the block, which must be the next one
+   *   after every block already seen.
+   * @param ids The ids of the users of the block, from UserTable.
+   * @param ledger The ledger, with the block applied.
+   */
+  void record(int num, int[] ids, Ledger ledger) {
+    for (int id : ids) {
+      pending.set(id);
+    } // for
+    if (num % interval != 0) {
+      return;
+    } // if
+    if (count == touched.length) {
+      touched = Arrays.copyOf(touched, 2 * count);
+    } // if
+    int[] users = pending.stream().toArray();
+    for (int id : users) {
+      store(id, count, ledger.get(id));
+    } // for
+    touched[count++] = users;
+    pending.clear();
+  } // record(int, int[], Ledger)
+
+  /**
+   * Drop the checkpoints of blocks that are no longer in the chain.
+   *
+   * @param size The number of blocks left in the chain.
+   */
+  void truncate(int size) {
+    int keep = (size + interval - 1) / interval;
+    while (count > keep) {
+      // The users of the dropped checkpoint are again in a transaction
+      // since the last one.
+      for (int id : touched[--count]) {
+        lengths[id]--;
+        pending.set(id);
+      } // for
+      touched[count] = null;
+    } // while
+  } // truncate(int)
+
+  /**
+   * Get a user's balance at the checkpoint at or before a block.
+   *
+   * @param height The number of the block, which must be in the chain.
+   * @param id The id of the user (or UserTable.UNKNOWN).
+   * @return the user's balance after block base(height).
+   */
+  long get(int height, int id) {
+    if (id < 0 || id >= at.length) {
+      return 0;
+    } // if
+    int c = height / interval;
+    int[] checkpoints = at[id];
+    // Find the last entry at or before c.
+    int lo = 0;
+    int hi = lengths[id];
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (checkpoints[mid] <= c) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      } // if/else
+    } // while
+    return (lo == 0) ? 0 : values[id][lo - 1];
+  } // get(int, int)
+} // class LedgerCheckpoints
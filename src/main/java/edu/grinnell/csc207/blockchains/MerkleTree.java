@@ -0,0 +1,198 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merkle trees over the transactions in a block.
+ *
+ * A leaf is the SHA-256 hash of a zero byte followed by a transaction's
+ * canonical encoding; an inner node is the hash of a one byte followed
+ * by its two children. The different first bytes keep a leaf from ever
+ * passing for an inner node. When a level has an odd number of nodes,
+ * the last one is promoted to the next level as is (rather than being
+ * paired with a copy of itself, which would let two different lists of
+ * transactions share a root).
+ *
+ * @author Mina Bakrac
+ */
+public final class MerkleTree {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The first byte hashed for a leaf.
+   */
+  static final byte LEAF = 0;
+
+  /**
+   * The first byte hashed for an inner node.
+   */
+  static final byte NODE = 1;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Merkle trees are only computed, never built.
+   */
+  private MerkleTree() {
+  } // MerkleTree()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get a SHA-256 digest.
+   *
+   * @return the digest.
+   */
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-256 algorithm not found", e);
+    } // try/catch
+  } // sha256()
+
+  /**
+   * Compute the level of the tree above the given one.
+   *
+   * @param level The hashes of one level.
+   * @return the hashes of the next level up.
+   */
+  static List<Hash> parents(List<Hash> level) {
+    List<Hash> up = new ArrayList<>((level.size() + 1) / 2);
+    for (int i = 0; i + 1 < level.size(); i += 2) {
+      up.add(node(level.get(i), level.get(i + 1)));
+    } // for
+    if (level.size() % 2 == 1) {
+      up.add(level.get(level.size() - 1));
+    } // if
+    return up;
+  } // parents(List<Hash>)
+
+  /**
+   * Compute the leaves for some transactions.
+   *
+   * @param transactions The transactions.
+   * @return their leaves, in order.
+   */
+  static List<Hash> leaves(List<Transaction> transactions) {
+    List<Hash> leaves = new ArrayList<>(transactions.size());
+    for (Transaction t : transactions) {
+      leaves.add(leaf(t));
+    } // for
+    return leaves;
+  } // leaves(List<Transaction>)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Compute the leaf for a transaction.
+   *
+   * @param transaction The transaction.
+   * @return its leaf hash.
+   */
+  public static Hash leaf(Transaction transaction) {
+    ByteBuffer buffer = ByteBuffer.allocate(1 + transaction.encodedLength()).put(LEAF);
+    transaction.writeTo(buffer);
+    return new Hash(sha256().digest(buffer.array()));
+  } // leaf(Transaction)
+
+  /**
+   * Compute the inner node above two children.
+   *
+   * @param left The left child.
+   * @param right The right child.
+   * @return the node's hash.
+   */
+  public static Hash node(Hash left, Hash right) {
+    ByteBuffer buffer = ByteBuffer.allocate(1 + left.length() + right.length()).put(NODE);
+    left.writeTo(buffer);
+    right.writeTo(buffer);
+    return new Hash(sha256().digest(buffer.array()));
+  } // node(Hash, Hash)
+
+  /**
+   * Compute the root of the tree over some transactions.
+   *
+   * @param transactions The transactions, in block order.
+   * @return the root.
+   * @throws IllegalArgumentException if there are no transactions.
+   */
+  public static Hash root(List<Transaction> transactions) {
+    if (transactions.isEmpty()) {
+      throw new IllegalArgumentException("A Merkle tree needs at least one transaction");
+    } // if
+    List<Hash> level = leaves(transactions);
+    while (level.size() > 1) {
+      level = parents(level);
+    } // while
+    return level.get(0);
+  } // root(List<Transaction>)
+
+  /**
+   * Compute the branch that proves that one transaction is in the tree:
+   * the sibling of each node on the path from its leaf to the root,
+   * bottom up, skipping levels where the node is promoted.
+   *
+   * @param transactions The transactions, in block order.
+   * @param index The position of the transaction to prove.
+   * @return the branch.
+   * @throws IndexOutOfBoundsException if there is no such transaction.
+   */
+  public static List<Hash> branch(List<Transaction> transactions, int index) {
+    if (index < 0 || index >= transactions.size()) {
+      throw new IndexOutOfBoundsException("No transaction " + index);
+    } // if
+    List<Hash> branch = new ArrayList<>();
+    List<Hash> level = leaves(transactions);
+    while (level.size() > 1) {
+      int sibling = index ^ 1;
+      if (sibling < level.size()) {
+        branch.add(level.get(sibling));
+      } // if
+      level = parents(level);
+      index /= 2;
+    } // while
+    return branch;
+  } // branch(List<Transaction>, int)
+
+  /**
+   * Compute the root that a branch leads to.
+   *
+   * @param leaf The leaf at the bottom of the branch.
+   * @param index The position of the leaf.
+   * @param count The number of leaves in the tree.
+   * @param branch The branch, as computed by branch().
+   * @return the root, or null if the branch is the wrong length for
+   *   the position and count.
+   */
+  public static Hash fold(Hash leaf, int index, int count, List<Hash> branch) {
+    if (index < 0 || index >= count) {
+      return null;
+    } // if
+    Hash hash = leaf;
+    int used = 0;
+    for (int n = count; n > 1; n = (n + 1) / 2) {
+      if (index % 2 == 1 || index + 1 < n) {
+        if (used == branch.size()) {
+          return null;
+        } // if
+        Hash sibling = branch.get(used++);
+        hash = (index % 2 == 1) ? node(sibling, hash) : node(hash, sibling);
+      } // if
+      index /= 2;
+    } // for
+    return (used == branch.size()) ? hash : null;
+  } // fold(Hash, int, int, List<Hash>)
+} // class MerkleTree
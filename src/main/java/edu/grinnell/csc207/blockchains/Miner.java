@@ -0,0 +1,213 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A parallel nonce search. The nonce space is split into fixed-size
+ * chunks that a pool of workers claim in order. The first worker to
+ * find a valid nonce stops all the others. Each worker hashes candidates
+ * with the miner's MiningEngine.
+ *
+ * @author Mina Bakrac
+ */
+public class Miner {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of workers searching in parallel.
+   */
+  private final int workers;
+
+  /**
+   * The threads that do the searching.
+   */
+  private final ExecutorService pool;
+
+  /**
+   * How the workers hash candidates.
+   */
+  private final MiningEngine engine;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a miner that uses the given number of workers and the
+   * preferred engine.
+   *
+   * @param numWorkers The number of workers to search with.
+   * @throws IllegalArgumentException if numWorkers is less than 1.
+   */
+  public Miner(int numWorkers) {
+    this(numWorkers, MiningEngine.preferred());
+  } // Miner(int)
+
+  /**
+   * Create a miner that uses the given number of workers and engine.
+   * Engines that are not available in this JVM fall back to SCALAR.
+   *
+   * @param numWorkers The number of workers to search with.
+   * @param miningEngine How the workers hash candidates.
+   * @throws IllegalArgumentException if numWorkers is less than 1.
+   */
+  public Miner(int numWorkers, MiningEngine miningEngine) {
+    if (numWorkers < 1) {
+      throw new IllegalArgumentException("A miner needs at least one worker.");
+    } // if
+    this.workers = numWorkers;
+    this.engine = miningEngine.isAvailable() ? miningEngine : MiningEngine.SCALAR;
+    this.pool = Executors.newFixedThreadPool(numWorkers, (r) -> {
+      Thread t = new Thread(r, "miner");
+      t.setDaemon(true);
+      return t;
+    });
+  } // Miner(int, MiningEngine)
+
+  /**
+   * Create a miner with one worker per available processor.
+   */
+  public Miner() {
+    this(Runtime.getRuntime().availableProcessors());
+  } // Miner()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of workers this miner uses.
+   *
+   * @return the number of workers.
+   */
+  public int getWorkers() {
+    return this.workers;
+  } // getWorkers()
+
+  /**
+   * Get the engine this miner's workers hash with.
+   *
+   * @return the engine.
+   */
+  public MiningEngine getEngine() {
+    return this.engine;
+  } // getEngine()
+
+  /**
+   * Stop this miner's threads once any running jobs finish. The miner
+   * cannot be used afterwards.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  } // shutdown()
+
+  /**
+   * Start mining a block with the given contents on this miner's workers,
+   * returning without waiting for the result.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator the hash must satisfy.
+   * @param timeout How long to search (or null for no limit).
+   * @return the running job.
+   */
+  public MiningJob start(int num, Transaction transaction, Hash prevHash, HashValidator check,
+      Duration timeout) {
+    return start(num, transaction, prevHash, check, timeout, null);
+  } // start(int, Transaction, Hash, HashValidator, Duration)
+
+  /**
+   * Start mining a block with the given contents on this miner's workers,
+   * resuming from a checkpoint and saving progress to it as we go.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator the hash must satisfy.
+   * @param timeout How long to search (or null for no limit).
+   * @param checkpoint Where progress is saved (or null to not save it).
+   * @return the running job.
+   */
+  public MiningJob start(int num, Transaction transaction, Hash prevHash, HashValidator check,
+      Duration timeout, NonceCheckpoint checkpoint) {
+    return start(num, List.of(transaction), prevHash, check, timeout, checkpoint);
+  } // start(int, Transaction, Hash, HashValidator, Duration, NonceCheckpoint)
+
+  /**
+   * Start mining a block with several transactions on this miner's
+   * workers, resuming from a checkpoint and saving progress to it as we
+   * go.
+   *
+   * @param num The number of the block.
+   * @param transactions The transactions for the block.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator the hash must satisfy.
+   * @param timeout How long to search (or null for no limit).
+   * @param checkpoint Where progress is saved (or null to not save it).
+   * @return the running job.
+   */
+  public MiningJob start(int num, List<Transaction> transactions, Hash prevHash,
+      HashValidator check, Duration timeout, NonceCheckpoint checkpoint) {
+    return new MiningJob(num, transactions, prevHash, check, timeout, checkpoint, engine)
+        .start(pool, workers);
+  } // start(int, List<Transaction>, Hash, HashValidator, Duration, NonceCheckpoint)
+
+  /**
+   * Find a nonce that makes the block with the given contents valid.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator the hash must satisfy.
+   * @return a valid nonce.
+   * @throws IllegalStateException if the search is interrupted.
+   */
+  public long findNonce(int num, Transaction transaction, Hash prevHash, HashValidator check) {
+    return mine(num, transaction, prevHash, check).getNonce();
+  } // findNonce(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine a block with the given contents.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator the hash must satisfy.
+   * @return a block whose hash satisfies the validator.
+   * @throws IllegalStateException if the search is interrupted.
+   */
+  public Block mine(int num, Transaction transaction, Hash prevHash, HashValidator check) {
+    return mine(num, List.of(transaction), prevHash, check);
+  } // mine(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine a block with several transactions.
+   *
+   * @param num The number of the block.
+   * @param transactions The transactions for the block.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator the hash must satisfy.
+   * @return a block whose hash satisfies the validator.
+   * @throws IllegalStateException if the search is interrupted.
+   */
+  public Block mine(int num, List<Transaction> transactions, Hash prevHash,
+      HashValidator check) {
+    MiningJob job = start(num, transactions, prevHash, check, null, null);
+    try {
+      return job.get();
+    } catch (InterruptedException e) {
+      job.cancel();
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Mining interrupted", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Mining failed", e.getCause());
+    } // try/catch
+  } // mine(int, List<Transaction>, Hash, HashValidator)
+} // class Miner
@@ -0,0 +1,561 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out disjoint nonce ranges for a block to remote MiningWorkers
+ * and collects the first valid result.
+ *
+ * The protocol is line based. For each range, the coordinator sends
+ * <code>JOB id prefix start count</code>, where prefix is the hex of
+ * everything in the block before the nonce. The worker answers with
+ * <code>FOUND id nonce</code> or, once the range is exhausted,
+ * <code>DONE id</code>. When some worker finds a nonce, the coordinator
+ * sends <code>STOP id</code> to the others, who answer <code>DONE id</code>
+ * early. <code>BYE</code> disconnects a worker.
+ *
+ * Workers check candidates with their own validator, so they must be
+ * configured with the same difficulty as the coordinator. The
+ * coordinator rechecks every claimed nonce and ignores invalid ones.
+ *
+ * The coordinator mines one block at a time; concurrent calls to mine
+ * take turns. If a worker disconnects in the middle of a range, the
+ * range goes to the next worker that asks for one. If every worker
+ * disconnects, or the coordinator is closed, the block fails.
+ *
+ * @author Mina Bakrac
+ */
+public class MiningCoordinator implements Closeable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of nonces in one range.
+   */
+  static final long RANGE_SIZE = 1 << 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Where workers connect.
+   */
+  private final ServerSocket server;
+
+  /**
+   * The connected workers.
+   */
+  private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+  /**
+   * The block being mined (or null between blocks). Guarded by this.
+   */
+  private Job current = null;
+
+  /**
+   * Held while a block is mined, so that blocks are mined one at a time.
+   */
+  private final ReentrantLock mining = new ReentrantLock();
+
+  /**
+   * The id of the next job.
+   */
+  private long nextId = 1;
+
+  /**
+   * Set once we are closed.
+   */
+  private volatile boolean closed = false;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Start accepting workers on the given port.
+   *
+   * @param port The port to listen on (or 0 for any free port).
+   * @throws IOException if the port cannot be opened.
+   */
+  public MiningCoordinator(int port) throws IOException {
+    this.server = new ServerSocket(port);
+    Thread acceptor = new Thread(this::accept, "mining-coordinator");
+    acceptor.setDaemon(true);
+    acceptor.start();
+  } // MiningCoordinator(int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * One block being mined.
+   */
+  private static class Job {
+    /**
+     * The id sent with every message about this job.
+     */
+    final long id;
+
+    /**
+     * The number of the block.
+     */
+    final int num;
+
+    /**
+     * The transaction for the block.
+     */
+    final Transaction transaction;
+
+    /**
+     * The hash of the previous block.
+     */
+    final Hash prevHash;
+
+    /**
+     * The validator the hash must satisfy.
+     */
+    final HashValidator check;
+
+    /**
+     * The hex form of the block's prefix.
+     */
+    final String prefix;
+
+    /**
+     * The start of the next new range to hand out.
+     */
+    final AtomicLong nextRange = new AtomicLong(0);
+
+    /**
+     * The starts of ranges whose workers disconnected before finishing
+     * them, which are handed out again before new ones.
+     */
+    final Queue<Long> abandoned = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The mined block.
+     */
+    final CompletableFuture<Block> result = new CompletableFuture<>();
+
+    /**
+     * Create a job.
+     *
+     * @param jid The id of the job.
+     * @param jnum The number of the block.
+     * @param jtransaction The transaction for the block.
+     * @param jprevHash The hash of the previous block.
+     * @param jcheck The validator the hash must satisfy.
+     */
+    Job(long jid, int jnum, Transaction jtransaction, Hash jprevHash, HashValidator jcheck) {
+      this.id = jid;
+      this.num = jnum;
+      this.transaction = jtransaction;
+      this.prevHash = jprevHash;
+      this.check = jcheck;
+      this.prefix = new Hash(BlockHasher.prefix(jnum, jtransaction, jprevHash)).toString();
+    } // Job(long, int, Transaction, Hash, HashValidator)
+
+    /**
+     * Accept a nonce reported by a worker, if it really is valid.
+     *
+     * @param nonce The nonce.
+     * @return true if the nonce was valid.
+     */
+    boolean offer(long nonce) {
+      Block blk = new Block(num, transaction, prevHash, nonce);
+      if (!check.isValid(blk.getHash())) {
+        return false;
+      } // if
+      result.complete(blk);
+      return true;
+    } // offer(long)
+  } // class Job
+
+  /**
+   * The coordinator's end of a connection to one worker.
+   */
+  private class Connection implements Runnable {
+    /**
+     * The connection.
+     */
+    final Socket socket;
+
+    /**
+     * Messages from the worker.
+     */
+    final BufferedReader in;
+
+    /**
+     * Messages to the worker.
+     */
+    final PrintWriter out;
+
+    /**
+     * The id of the job the worker is working on (or 0 if idle). Guarded
+     * by this, so that a STOP is never sent ahead of its JOB.
+     */
+    long busyWith = 0;
+
+    /**
+     * The start of the range the worker is working on. Guarded by this.
+     */
+    long rangeStart = 0;
+
+    /**
+     * Set up a connection.
+     *
+     * @param csocket The connected socket.
+     * @throws IOException if the socket's streams cannot be opened.
+     */
+    Connection(Socket csocket) throws IOException {
+      this.socket = csocket;
+      this.in = new BufferedReader(
+          new InputStreamReader(csocket.getInputStream(), StandardCharsets.US_ASCII));
+      this.out = new PrintWriter(csocket.getOutputStream(), true, StandardCharsets.US_ASCII);
+    } // Connection(Socket)
+
+    /**
+     * Serve jobs to the worker until either side disconnects.
+     */
+    @Override
+    public void run() {
+      try {
+        long lastId = 0;
+        while (!closed) {
+          Job job = awaitJob(lastId);
+          lastId = job.id;
+          serve(job);
+        } // while
+      } catch (IOException | InterruptedException e) {
+        // The worker is gone; drop it.
+      } finally {
+        connections.remove(this);
+        workerLeft();
+        try {
+          socket.close();
+        } catch (IOException e) {
+          // Already closed.
+        } // try/catch
+      } // try/finally
+    } // run()
+
+    /**
+     * Hand the worker ranges of one job until the job is done.
+     *
+     * @param job The job.
+     * @throws IOException if the worker disconnects.
+     */
+    void serve(Job job) throws IOException {
+      try {
+        while (send(job)) {
+          String reply;
+          do {
+            reply = in.readLine();
+            if (reply == null) {
+              throw new IOException("Worker disconnected");
+            } // if
+          } while (!handle(job, reply));
+        } // while
+      } catch (IOException e) {
+        abandon(job);
+        throw e;
+      } // try/catch
+    } // serve(Job)
+
+    /**
+     * Send the worker the next range of a job, unless the job is done or
+     * we are closed.
+     *
+     * @param job The job.
+     * @return true if a range was sent.
+     */
+    synchronized boolean send(Job job) {
+      busyWith = 0;
+      if (closed || job.result.isDone()) {
+        return false;
+      } // if
+      Long start = job.abandoned.poll();
+      rangeStart = (start != null) ? start : job.nextRange.getAndAdd(RANGE_SIZE);
+      out.printf("JOB %d %s %d %d%n", job.id, job.prefix, rangeStart, RANGE_SIZE);
+      busyWith = job.id;
+      return true;
+    } // send(Job)
+
+    /**
+     * Give up the range the worker was on, so that another worker gets it.
+     *
+     * @param job The job.
+     */
+    synchronized void abandon(Job job) {
+      if (busyWith == job.id && !job.result.isDone()) {
+        job.abandoned.add(rangeStart);
+      } // if
+      busyWith = 0;
+    } // abandon(Job)
+
+    /**
+     * Tell the worker to stop working on a job, if it is.
+     *
+     * @param id The id of the job.
+     */
+    synchronized void stop(long id) {
+      if (busyWith == id) {
+        out.printf("STOP %d%n", id);
+      } // if
+    } // stop(long)
+
+    /**
+     * Handle one message from the worker.
+     *
+     * @param job The job the worker is on.
+     * @param reply The message.
+     * @return true if the worker has finished its range.
+     */
+    boolean handle(Job job, String reply) {
+      String[] parts = reply.trim().split("\\s+");
+      try {
+        if (parts.length < 2 || Long.parseLong(parts[1]) != job.id) {
+          return false;
+        } // if
+        if ("FOUND".equals(parts[0]) && parts.length == 3) {
+          if (job.offer(Long.parseLong(parts[2]))) {
+            stopOthers(job, this);
+          } // if
+          return true;
+        } // if
+      } catch (NumberFormatException e) {
+        return false;
+      } // try/catch
+      return "DONE".equals(parts[0]);
+    } // handle(Job, String)
+  } // class Connection
+
+  /**
+   * Accept workers until closed.
+   */
+  private void accept() {
+    while (!closed) {
+      try {
+        Connection conn = new Connection(server.accept());
+        connections.add(conn);
+        Thread t = new Thread(conn, "mining-connection");
+        t.setDaemon(true);
+        t.start();
+        synchronized (this) {
+          notifyAll();
+        } // synchronized
+      } catch (SocketException e) {
+        return;
+      } catch (IOException e) {
+        // Skip the failed connection.
+      } // try/catch
+    } // while
+  } // accept()
+
+  /**
+   * Wait for a job newer than the given one.
+   *
+   * @param lastId The id of the last job this caller served.
+   * @return the job.
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws IOException if the coordinator closes while waiting.
+   */
+  private synchronized Job awaitJob(long lastId) throws InterruptedException, IOException {
+    while (!closed && (current == null || current.id == lastId)) {
+      wait();
+    } // while
+    if (closed) {
+      throw new IOException("Coordinator closed");
+    } // if
+    return current;
+  } // awaitJob(long)
+
+  /**
+   * Fail the current block if the last worker just left.
+   */
+  private synchronized void workerLeft() {
+    if (current != null && connections.isEmpty()) {
+      current.result.completeExceptionally(new IllegalStateException("No workers left"));
+    } // if
+  } // workerLeft()
+
+  /**
+   * Tell every other worker still on a job to stop.
+   *
+   * @param job The job that is done.
+   * @param finder The connection that found the nonce.
+   */
+  private void stopOthers(Job job, Connection finder) {
+    for (Connection conn : connections) {
+      if (conn != finder) {
+        conn.stop(job.id);
+      } // if
+    } // for
+  } // stopOthers(Job, Connection)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the port workers should connect to.
+   *
+   * @return the port.
+   */
+  public int getPort() {
+    return server.getLocalPort();
+  } // getPort()
+
+  /**
+   * Get the number of connected workers.
+   *
+   * @return the number of workers.
+   */
+  public int getWorkerCount() {
+    return connections.size();
+  } // getWorkerCount()
+
+  /**
+   * Wait until at least the given number of workers are connected.
+   *
+   * @param count The number of workers to wait for.
+   * @param millis The longest to wait, in milliseconds.
+   * @return true if enough workers connected in time.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public synchronized boolean awaitWorkers(int count, long millis) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + millis;
+    while (connections.size() < count) {
+      long left = deadline - System.currentTimeMillis();
+      if (left <= 0) {
+        return false;
+      } // if
+      wait(left);
+    } // while
+    return true;
+  } // awaitWorkers(int, long)
+
+  /**
+   * Mine a block on the connected workers (including any that connect
+   * while mining), waiting as long as it takes.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator the hash must satisfy.
+   * @return a block whose hash satisfies the validator.
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws IllegalStateException if the coordinator is closed or every
+   *   worker disconnects.
+   */
+  public Block mine(int num, Transaction transaction, Hash prevHash, HashValidator check)
+      throws InterruptedException {
+    return mine(num, transaction, prevHash, check, null);
+  } // mine(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Mine a block on the connected workers (including any that connect
+   * while mining), giving up once the timeout passes. The time spent
+   * waiting for another call's block to be mined first counts.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   * @param check The validator the hash must satisfy.
+   * @param timeout How long to wait (or null for no limit).
+   * @return a block whose hash satisfies the validator.
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws IllegalStateException if the coordinator is closed, no
+   *   worker is connected, every worker disconnects, or the timeout
+   *   passes.
+   */
+  public Block mine(int num, Transaction transaction, Hash prevHash, HashValidator check,
+      Duration timeout) throws InterruptedException {
+    long deadline = (timeout == null) ? Long.MAX_VALUE : System.nanoTime() + timeout.toNanos();
+    if (timeout == null) {
+      mining.lockInterruptibly();
+    } else if (!mining.tryLock(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+      throw new IllegalStateException("No nonce found before the deadline");
+    } // if/else
+    try {
+      if (closed) {
+        throw new IllegalStateException("Coordinator closed");
+      } // if
+      if (connections.isEmpty()) {
+        throw new IllegalStateException("No workers connected");
+      } // if
+      Job job;
+      synchronized (this) {
+        job = new Job(nextId++, num, transaction, prevHash, check);
+        current = job;
+        notifyAll();
+      } // synchronized
+      try {
+        if (timeout == null) {
+          return job.result.get();
+        } // if
+        return job.result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Mining failed", e.getCause());
+      } catch (TimeoutException e) {
+        throw new IllegalStateException("No nonce found before the deadline", e);
+      } finally {
+        if (job.result.cancel(false)) {
+          stopOthers(job, null);
+        } // if
+        synchronized (this) {
+          if (current == job) {
+            current = null;
+          } // if
+        } // synchronized
+      } // try/finally
+    } finally {
+      mining.unlock();
+    } // try/finally
+  } // mine(int, Transaction, Hash, HashValidator, Duration)
+
+  /**
+   * Disconnect every worker and stop accepting new ones. The block being
+   * mined, if any, fails.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    synchronized (this) {
+      if (current != null) {
+        current.result.completeExceptionally(new IllegalStateException("Coordinator closed"));
+      } // if
+      notifyAll();
+    } // synchronized
+    for (Connection conn : connections) {
+      conn.out.println("BYE");
+    } // for
+    try {
+      server.close();
+    } catch (IOException e) {
+      // Already closed.
+    } // try/catch
+  } // close()
+} // class MiningCoordinator
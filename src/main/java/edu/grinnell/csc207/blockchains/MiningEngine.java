@@ -0,0 +1,129 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * The ways we can hash candidate nonces while mining.
+ *
+ * @author Mina Bakrac
+ */
+public enum MiningEngine {
+  /**
+   * One nonce at a time, with the midstate SHA-256 engine.
+   */
+  SCALAR,
+
+  /**
+   * One nonce per SIMD lane, with the Vector API. Only available when
+   * the project is built with the vector profile, the JVM runs with
+   * --add-modules jdk.incubator.vector, and the hardware has vectors of
+   * at least four ints.
+   */
+  VECTOR;
+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The system property that chooses the default engine.
+   */
+  public static final String PROPERTY = "blockchains.mining.engine";
+
+  /**
+   * The name of the Vector API module.
+   */
+  static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+  /**
+   * The class of the vector engine, which only the vector profile
+   * compiles.
+   */
+  static final String VECTOR_CLASS = "edu.grinnell.csc207.blockchains.VectorSha256";
+
+  /**
+   * The fewest lanes for which vectors are worth using.
+   */
+  static final int MIN_LANES = 4;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * The constructor of the vector engine, found the first time it is
+   * needed, or null if the engine is not usable here.
+   */
+  private static final class Vectors {
+    /**
+     * The constructor, which takes the block prefix.
+     */
+    static final Constructor<? extends NonceEngine> CONSTRUCTOR = find();
+
+    /**
+     * Find the constructor of the vector engine.
+     *
+     * @return the constructor, or null if the engine is not usable.
+     */
+    private static Constructor<? extends NonceEngine> find() {
+      if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+        return null;
+      } // if
+      try {
+        Constructor<? extends NonceEngine> c =
+            Class.forName(VECTOR_CLASS).asSubclass(NonceEngine.class)
+                .getDeclaredConstructor(byte[].class);
+        return (c.newInstance(new byte[0]).lanes() >= MIN_LANES) ? c : null;
+      } catch (ReflectiveOperationException | LinkageError e) {
+        return null;
+      } // try/catch
+    } // find()
+  } // class Vectors
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine whether this engine can be used in this JVM.
+   *
+   * @return true if the engine is available.
+   */
+  public boolean isAvailable() {
+    return (this == SCALAR) || (Vectors.CONSTRUCTOR != null);
+  } // isAvailable()
+
+  /**
+   * Get the engine to mine with by default: the one named by the
+   * blockchains.mining.engine system property if it is available, and
+   * SCALAR otherwise.
+   *
+   * @return the default engine.
+   */
+  public static MiningEngine preferred() {
+    try {
+      MiningEngine engine = valueOf(System.getProperty(PROPERTY, "SCALAR").toUpperCase());
+      return engine.isAvailable() ? engine : SCALAR;
+    } catch (IllegalArgumentException e) {
+      return SCALAR;
+    } // try/catch
+  } // preferred()
+
+  /**
+   * Create an engine for the given block prefix, falling back to the
+   * scalar engine if this one is not available.
+   *
+   * @param prefix Everything in the block before the nonce.
+   * @return the engine.
+   */
+  NonceEngine create(byte[] prefix) {
+    if (this == VECTOR && isAvailable()) {
+      try {
+        return Vectors.CONSTRUCTOR.newInstance((Object) prefix);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException("Cannot create vector engine", e);
+      } // try/catch
+    } // if
+    return new Sha256(prefix);
+  } // create(byte[])
+} // enum MiningEngine
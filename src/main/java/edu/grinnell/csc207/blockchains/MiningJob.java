@@ -0,0 +1,457 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A search for the nonce of one block, running on some workers. Jobs
+ * can be polled for the number of attempts made, cancelled, and bound
+ * by a deadline. A job with a checkpoint resumes from the checkpoint and
+ * periodically records how far it has searched.
+ *
+ * @author Mina Bakrac
+ */
+public class MiningJob {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of nonces a worker claims at a time.
+   */
+  static final long CHUNK_SIZE = 1 << 12;
+
+  /**
+   * How often (in attempts) a worker reports progress and checks whether
+   * it should stop.
+   */
+  static final long CHECK_INTERVAL = 1 << 8;
+
+  /**
+   * How often (in nanoseconds) we save the checkpoint.
+   */
+  static final long SAVE_INTERVAL = 1_000_000_000L;
+
+  /**
+   * The chunk start of a worker that has not claimed a chunk.
+   */
+  static final long NO_CHUNK = Long.MAX_VALUE;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of the block being mined.
+   */
+  private final int num;
+
+  /**
+   * The transactions for the block.
+   */
+  private final List<Transaction> transactions;
+
+  /**
+   * The hash of the previous block.
+   */
+  private final Hash prevHash;
+
+  /**
+   * The validator the hash must satisfy.
+   */
+  private final HashValidator check;
+
+  /**
+   * How candidates are hashed.
+   */
+  private final MiningEngine engine;
+
+  /**
+   * When to give up, in System.nanoTime() units.
+   */
+  private final long deadline;
+
+  /**
+   * Where progress is saved (or null if it is not).
+   */
+  private final NonceCheckpoint checkpoint;
+
+  /**
+   * The checkpoint key of the block being mined (or null if there is no
+   * checkpoint).
+   */
+  private final String key;
+
+  /**
+   * The start of the next unclaimed chunk of nonces. Guarded by this.
+   */
+  private long nextChunk;
+
+  /**
+   * The start of the chunk each worker is searching. Guarded by this.
+   */
+  private long[] claimed = new long[0];
+
+  /**
+   * When we last saved the checkpoint. Guarded by this.
+   */
+  private long lastSave = System.nanoTime();
+
+  /**
+   * When the workers were started, in System.nanoTime() units. Set
+   * before any worker runs.
+   */
+  private long startedAt = System.nanoTime();
+
+  /**
+   * Set once a nonce is found, after which we never save. Guarded by this.
+   */
+  private boolean solved = false;
+
+  /**
+   * The number of workers that have started.
+   */
+  private final AtomicInteger started = new AtomicInteger();
+
+  /**
+   * The number of nonces tried so far.
+   */
+  private final LongAdder attempts = new LongAdder();
+
+  /**
+   * The number of workers still searching.
+   */
+  private final AtomicInteger running = new AtomicInteger();
+
+  /**
+   * The mined block, once there is one.
+   */
+  private final CompletableFuture<Block> result = new CompletableFuture<>();
+
+  /**
+   * Set when the workers should stop.
+   */
+  private volatile boolean stopped = false;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a job to mine the block with the given contents.
+   *
+   * @param bnum The number of the block.
+   * @param btransaction The transaction for the block.
+   * @param bprevHash The hash of the previous block.
+   * @param bcheck The validator the hash must satisfy.
+   * @param timeout How long to search before giving up (or null to search
+   *   until a nonce is found).
+   */
+  MiningJob(int bnum, Transaction btransaction, Hash bprevHash, HashValidator bcheck,
+      Duration timeout) {
+    this(bnum, btransaction, bprevHash, bcheck, timeout, null);
+  } // MiningJob(int, Transaction, Hash, HashValidator, Duration)
+
+  /**
+   * Create a job to mine the block with the given contents, resuming from
+   * and saving progress to a checkpoint.
+   *
+   * @param bnum The number of the block.
+   * @param btransaction The transaction for the block.
+   * @param bprevHash The hash of the previous block.
+   * @param bcheck The validator the hash must satisfy.
+   * @param timeout How long to search before giving up (or null to search
+   *   until a nonce is found).
+   * @param bcheckpoint Where to save progress (or null to not save it).
+   */
+  MiningJob(int bnum, Transaction btransaction, Hash bprevHash, HashValidator bcheck,
+      Duration timeout, NonceCheckpoint bcheckpoint) {
+    this(bnum, List.of(btransaction), bprevHash, bcheck, timeout, bcheckpoint,
+        MiningEngine.preferred());
+  } // MiningJob(int, Transaction, Hash, HashValidator, Duration, NonceCheckpoint)
+
+  /**
+   * Create a job to mine the block with the given contents on a
+   * particular engine, resuming from and saving progress to a checkpoint.
+   *
+   * @param bnum The number of the block.
+   * @param btransactions The transactions for the block.
+   * @param bprevHash The hash of the previous block.
+   * @param bcheck The validator the hash must satisfy.
+   * @param timeout How long to search before giving up (or null to search
+   *   until a nonce is found).
+   * @param bcheckpoint Where to save progress (or null to not save it).
+   * @param bengine How candidates are hashed.
+   */
+  MiningJob(int bnum, List<Transaction> btransactions, Hash bprevHash, HashValidator bcheck,
+      Duration timeout, NonceCheckpoint bcheckpoint, MiningEngine bengine) {
+    this.num = bnum;
+    this.transactions = List.copyOf(btransactions);
+    this.prevHash = bprevHash;
+    this.check = bcheck;
+    this.engine = bengine;
+    this.deadline = (timeout == null)
+        ? Long.MAX_VALUE
+        : System.nanoTime() + timeout.toNanos();
+    this.checkpoint = bcheckpoint;
+    this.key = (bcheckpoint == null) ? null : NonceCheckpoint.key(bnum, transactions, bprevHash);
+    // Attempt counting assumes that chunks start on a chunk boundary.
+    this.nextChunk = (bcheckpoint == null) ? 0 : bcheckpoint.load(key) / CHUNK_SIZE * CHUNK_SIZE;
+  } // MiningJob(int, List, Hash, HashValidator, Duration, NonceCheckpoint, MiningEngine)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Start the given number of workers on the executor.
+   *
+   * @param executor Where the workers run.
+   * @param workers The number of workers.
+   * @return this job.
+   */
+  MiningJob start(Executor executor, int workers) {
+    startedAt = System.nanoTime();
+    synchronized (this) {
+      claimed = new long[workers];
+      Arrays.fill(claimed, NO_CHUNK);
+    } // synchronized
+    running.set(workers);
+    for (int i = 0; i < workers; i++) {
+      try {
+        executor.execute(this::work);
+      } catch (RejectedExecutionException e) {
+        stopped = true;
+        result.completeExceptionally(e);
+        running.addAndGet(i - workers);
+        break;
+      } // try/catch
+    } // for
+    return this;
+  } // start(Executor, int)
+
+  /**
+   * Search as one worker. The last worker out saves our progress (unless
+   * a nonce was found) and settles the result if there is none yet. A
+   * cancelled job is already settled, but its progress is still saved.
+   */
+  private void work() {
+    try {
+      search();
+    } catch (RuntimeException | Error e) {
+      stopped = true;
+      result.completeExceptionally(e);
+    } finally {
+      if (running.decrementAndGet() == 0) {
+        saveCheckpoint();
+        if (!result.isDone()) {
+          result.completeExceptionally((System.nanoTime() - deadline >= 0)
+              ? new TimeoutException("No nonce found before the deadline")
+              : new CancellationException("Mining cancelled"));
+        } // if
+      } // if
+    } // try/finally
+  } // work()
+
+  /**
+   * Claim chunks of nonces and try them, as many at a time as the engine
+   * has lanes, until someone finds a valid one or the job stops. Lane
+   * counts are powers of two no larger than CHECK_INTERVAL, so every
+   * group of lanes lies within one check interval.
+   */
+  private void search() {
+    int id = started.getAndIncrement();
+    NonceEngine hasher = engine.create(BlockHasher.prefix(num, transactions, prevHash));
+    int lanes = hasher.lanes();
+    while (!shouldStop()) {
+      long start = claim(id);
+      for (long nonce = start; nonce < start + CHUNK_SIZE; nonce += lanes) {
+        int hit = hasher.firstValid(nonce, check);
+        if (hit >= 0) {
+          attempts.add((nonce + hit) % CHECK_INTERVAL + 1);
+          stopped = true;
+          clearCheckpoint();
+          Block blk = new Block(num, transactions, prevHash, nonce + hit);
+          blk.setMiningTime(System.nanoTime() - startedAt);
+          result.complete(blk);
+          return;
+        } // if
+        if ((nonce + lanes) % CHECK_INTERVAL == 0) {
+          attempts.add(CHECK_INTERVAL);
+          if (shouldStop()) {
+            return;
+          } // if
+        } // if
+      } // for
+    } // while
+  } // search()
+
+  /**
+   * Claim the next chunk of nonces for a worker, saving the checkpoint
+   * if it is time to.
+   *
+   * @param id The worker.
+   * @return the start of the chunk.
+   */
+  private synchronized long claim(int id) {
+    long start = nextChunk;
+    nextChunk += CHUNK_SIZE;
+    claimed[id] = start;
+    if (checkpoint != null && System.nanoTime() - lastSave >= SAVE_INTERVAL) {
+      saveCheckpoint();
+    } // if
+    return start;
+  } // claim(int)
+
+  /**
+   * Save our progress, if we have a checkpoint. Failing to save only
+   * loses progress, so it does not stop the search.
+   */
+  private synchronized void saveCheckpoint() {
+    if (checkpoint == null || solved) {
+      return;
+    } // if
+    lastSave = System.nanoTime();
+    try {
+      checkpoint.save(key, getSearchedBelow());
+    } catch (IOException e) {
+      // Keep mining; the next save may succeed.
+    } // try/catch
+  } // saveCheckpoint()
+
+  /**
+   * Remove the checkpoint, if we have one, once the block is mined, and
+   * make sure that no later save recreates it.
+   */
+  private synchronized void clearCheckpoint() {
+    solved = true;
+    if (checkpoint == null) {
+      return;
+    } // if
+    try {
+      checkpoint.clear();
+    } catch (IOException e) {
+      // A stale checkpoint is ignored, since its key no longer matches
+      // the next block.
+    } // try/catch
+  } // clearCheckpoint()
+
+  /**
+   * Determine whether the workers should stop.
+   *
+   * @return true if the job is done, cancelled, or past its deadline.
+   */
+  private boolean shouldStop() {
+    if (!stopped && System.nanoTime() - deadline >= 0) {
+      stopped = true;
+    } // if
+    return stopped;
+  } // shouldStop()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the number of the block being mined.
+   *
+   * @return the number of the block.
+   */
+  public int getNum() {
+    return this.num;
+  } // getNum()
+
+  /**
+   * Get the (approximate) number of nonces tried so far.
+   *
+   * @return the number of attempts.
+   */
+  public long getAttempts() {
+    return attempts.sum();
+  } // getAttempts()
+
+  /**
+   * Get the first nonce that might not have been searched. Every nonce
+   * below it has been tried.
+   *
+   * @return the search watermark.
+   */
+  public synchronized long getSearchedBelow() {
+    long below = nextChunk;
+    for (long start : claimed) {
+      below = Math.min(below, start);
+    } // for
+    return below;
+  } // getSearchedBelow()
+
+  /**
+   * Stop mining. Has no effect if the job is already done.
+   *
+   * @return true if the job was cancelled by this call.
+   */
+  public boolean cancel() {
+    stopped = true;
+    return result.cancel(false);
+  } // cancel()
+
+  /**
+   * Determine if the job is done, whether it found a block, failed,
+   * timed out, or was cancelled.
+   *
+   * @return true if the job is done.
+   */
+  public boolean isDone() {
+    return result.isDone();
+  } // isDone()
+
+  /**
+   * Get the future that completes with the mined block. The future
+   * completes exceptionally with a TimeoutException if the deadline
+   * passes first.
+   *
+   * @return the future.
+   */
+  public CompletableFuture<Block> future() {
+    return this.result;
+  } // future()
+
+  /**
+   * Wait for the mined block.
+   *
+   * @return the mined block.
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws ExecutionException if mining failed or timed out.
+   * @throws CancellationException if the job was cancelled.
+   */
+  public Block get() throws InterruptedException, ExecutionException {
+    return result.get();
+  } // get()
+
+  /**
+   * Wait a limited time for the mined block. The job keeps running if
+   * the wait times out.
+   *
+   * @param timeout How long to wait.
+   * @param unit The unit of timeout.
+   * @return the mined block.
+   * @throws InterruptedException if interrupted while waiting.
+   * @throws ExecutionException if mining failed or timed out.
+   * @throws TimeoutException if the wait times out.
+   * @throws CancellationException if the job was cancelled.
+   */
+  public Block get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException {
+    return result.get(timeout, unit);
+  } // get(long, TimeUnit)
+} // class MiningJob
@@ -0,0 +1,154 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Mines nonce ranges handed out by a MiningCoordinator. See that class
+ * for the protocol.
+ *
+ * @author Mina Bakrac
+ */
+public class MiningWorker implements Runnable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How often (in attempts) we check for a STOP message.
+   */
+  static final long CHECK_INTERVAL = 1 << 10;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The coordinator's host.
+   */
+  private final String host;
+
+  /**
+   * The coordinator's port.
+   */
+  private final int port;
+
+  /**
+   * The validator candidates must satisfy.
+   */
+  private final HashValidator check;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a worker for the coordinator at the given address.
+   *
+   * @param chost The coordinator's host.
+   * @param cport The coordinator's port.
+   * @param ccheck The validator candidates must satisfy; it must match
+   *   the coordinator's.
+   */
+  public MiningWorker(String chost, int cport, HashValidator ccheck) {
+    this.host = chost;
+    this.port = cport;
+    this.check = ccheck;
+  } // MiningWorker(String, int, HashValidator)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Search one range, stopping early if told to.
+   *
+   * @param in Messages from the coordinator.
+   * @param id The id of the job.
+   * @param prefix The block's prefix.
+   * @param start The first nonce to try.
+   * @param count The number of nonces to try.
+   * @return the valid nonce found, or null if there is none (or we were
+   *   stopped).
+   * @throws EOFException if the coordinator said goodbye or closed the
+   *   connection.
+   * @throws IOException if the connection fails.
+   */
+  private Long search(BufferedReader in, long id, byte[] prefix, long start, long count)
+      throws IOException {
+    Sha256 engine = new Sha256(prefix);
+    byte[] candidate = new byte[BlockHasher.HASH_BYTES];
+    for (long nonce = start; nonce < start + count; nonce++) {
+      engine.hash(nonce, candidate);
+      if (check.isValid(candidate, 0, BlockHasher.HASH_BYTES)) {
+        return nonce;
+      } // if
+      if ((nonce - start) % CHECK_INTERVAL == 0 && in.ready()) {
+        String msg = in.readLine();
+        if (msg == null || msg.equals("BYE")) {
+          throw new EOFException("The coordinator said goodbye");
+        } else if (msg.equals("STOP " + id)) {
+          return null;
+        } // if/else
+      } // if
+    } // for
+    return null;
+  } // search(BufferedReader, long, byte[], long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Connect to the coordinator and mine until it says goodbye or the
+   * connection fails.
+   *
+   * @throws IOException if the connection fails.
+   */
+  public void work() throws IOException {
+    try (Socket socket = new Socket(host, port);
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        PrintWriter out =
+            new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+      String msg;
+      while ((msg = in.readLine()) != null && !msg.equals("BYE")) {
+        String[] parts = msg.split(" ");
+        if (!parts[0].equals("JOB") || parts.length != 5) {
+          continue; // A stale STOP, or something we don't understand.
+        } // if
+        long id = Long.parseLong(parts[1]);
+        byte[] prefix = Hash.fromHex(parts[2]).getBytes();
+        Long found;
+        try {
+          found = search(in, id, prefix, Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+        } catch (EOFException e) {
+          return; // Leave without reporting on the range.
+        } // try/catch
+        if (found != null) {
+          out.printf("FOUND %d %d%n", id, found);
+        } else {
+          out.printf("DONE %d%n", id);
+        } // if/else
+      } // while
+    } // try
+  } // work()
+
+  /**
+   * Mine until the coordinator says goodbye, ignoring connection
+   * failures.
+   */
+  @Override
+  public void run() {
+    try {
+      work();
+    } catch (IOException e) {
+      // The coordinator is gone; so are we.
+    } // try/catch
+  } // run()
+} // class MiningWorker
@@ -0,0 +1,160 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * A file that records how far a nonce search has gotten, so that mining
+ * can resume after a restart. The file identifies the block being mined
+ * by a hash of its number, transaction, and previous hash; a checkpoint
+ * for a different block is ignored.
+ *
+ * @author Mina Bakrac
+ */
+public class NonceCheckpoint {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The property holding the key of the block being mined.
+   */
+  static final String KEY = "block";
+
+  /**
+   * The property holding the first nonce not yet known to be searched.
+   */
+  static final String NEXT = "next";
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The checkpoint file.
+   */
+  private final Path file;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a checkpoint stored in the given file.
+   *
+   * @param efile The checkpoint file. It need not exist yet.
+   */
+  public NonceCheckpoint(Path efile) {
+    this.file = efile;
+  } // NonceCheckpoint(Path)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Compute the key that identifies a block's contents.
+   *
+   * @param num The number of the block.
+   * @param transaction The transaction for the block.
+   * @param prevHash The hash of the previous block.
+   * @return the key.
+   */
+  public static String key(int num, Transaction transaction, Hash prevHash) {
+    return key(num, List.of(transaction), prevHash);
+  } // key(int, Transaction, Hash)
+
+  /**
+   * Compute the key that identifies the contents of a block with several
+   * transactions.
+   *
+   * @param num The number of the block.
+   * @param transactions The transactions for the block.
+   * @param prevHash The hash of the previous block.
+   * @return the key.
+   */
+  public static String key(int num, List<Transaction> transactions, Hash prevHash) {
+    try {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      return new Hash(md.digest(BlockHasher.prefix(num, transactions, prevHash))).toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("SHA-256 algorithm not found", e);
+    } // try/catch
+  } // key(int, List<Transaction>, Hash)
+
+  /**
+   * Get the file this checkpoint is stored in.
+   *
+   * @return the file.
+   */
+  public Path getFile() {
+    return this.file;
+  } // getFile()
+
+  /**
+   * Find where to resume the search for a block.
+   *
+   * @param key The key of the block being mined.
+   * @return the first nonce not yet searched, or 0 if there is no
+   *   usable checkpoint for that block.
+   */
+  public synchronized long load(String key) {
+    Properties props = new Properties();
+    try (Reader in = Files.newBufferedReader(file)) {
+      props.load(in);
+    } catch (IOException e) {
+      return 0;
+    } // try/catch
+    if (!key.equals(props.getProperty(KEY))) {
+      return 0;
+    } // if
+    try {
+      return Math.max(0, Long.parseLong(props.getProperty(NEXT, "0")));
+    } catch (NumberFormatException e) {
+      return 0;
+    } // try/catch
+  } // load(String)
+
+  /**
+   * Record that every nonce below next has been searched. The file is
+   * replaced atomically, so a crash leaves either the old or the new
+   * checkpoint.
+   *
+   * @param key The key of the block being mined.
+   * @param next The first nonce not yet known to be searched.
+   * @throws IOException if the file cannot be written.
+   */
+  public synchronized void save(String key, long next) throws IOException {
+    Properties props = new Properties();
+    props.setProperty(KEY, key);
+    props.setProperty(NEXT, Long.toString(next));
+    Path dir = file.toAbsolutePath().getParent();
+    Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+    try (Writer out = Files.newBufferedWriter(tmp)) {
+      props.store(out, "Nonce search progress");
+    } // try
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  } // save(String, long)
+
+  /**
+   * Remove the checkpoint, once the block has been mined.
+   *
+   * @throws IOException if the file cannot be removed.
+   */
+  public synchronized void clear() throws IOException {
+    try {
+      Files.delete(file);
+    } catch (NoSuchFileException e) {
+      // Nothing to clear.
+    } // try/catch
+  } // clear()
+} // class NonceCheckpoint
@@ -0,0 +1,26 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * Something that hashes a block prefix with several consecutive nonces
+ * at a time and checks the results.
+ *
+ * @author Mina Bakrac
+ */
+interface NonceEngine {
+  /**
+   * Determine how many nonces each call to firstValid tries.
+   *
+   * @return the number of lanes.
+   */
+  int lanes();
+
+  /**
+   * Try the nonces start through start + lanes() - 1.
+   *
+   * @param start The first nonce to try.
+   * @param check The validator the hash must satisfy.
+   * @return the offset from start of the first valid nonce, or -1 if
+   *   none of them are valid.
+   */
+  int firstValid(long start, HashValidator check);
+} // interface NonceEngine
@@ -0,0 +1,285 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Adjusts the mining target so that blocks take about a given time to
+ * mine. After every window of timed blocks, the target is scaled by the
+ * ratio of the observed to the desired mining time, limited to a factor
+ * of MAX_ADJUSTMENT per window. The target never rises above the floor
+ * validator's target.
+ *
+ * A retargeter serves one chain, which tells it about every block it
+ * appends and removes. It remembers the target every block had to meet,
+ * so that the chain checks each block against the target it was mined
+ * at, and so that removing blocks restores the target from before them.
+ * Only blocks the chain appends count toward a window, and only those
+ * whose mining time is known (blocks mined elsewhere are not timed).
+ *
+ * @author Slok Rajbhandari
+ */
+public class Retargeter {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The most the target may change, up or down, in one adjustment.
+   */
+  public static final long MAX_ADJUSTMENT = 4;
+
+  /**
+   * The number of blocks we have room for at first.
+   */
+  static final int INITIAL_CAPACITY = 64;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The easiest target allowed.
+   */
+  private final TargetValidator floor;
+
+  /**
+   * The desired time per block, in nanoseconds.
+   */
+  private final long intervalNanos;
+
+  /**
+   * The number of timed blocks between adjustments.
+   */
+  private final int window;
+
+  /**
+   * The targets so far, oldest first. Replaced rather than changed, so
+   * it may be read without the lock.
+   */
+  private volatile Schedule schedule;
+
+  /**
+   * The mining time of each block, in nanoseconds, or Block.UNTIMED.
+   */
+  private long[] times = new long[INITIAL_CAPACITY];
+
+  /**
+   * The number of blocks.
+   */
+  private int size = 0;
+
+  /**
+   * The number of timed blocks since the last adjustment.
+   */
+  private int observed = 0;
+
+  /**
+   * The total mining time since the last adjustment, in nanoseconds.
+   */
+  private long elapsedNanos = 0;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a retargeter.
+   *
+   * @param efloor The easiest target allowed; also the starting target.
+   * @param interval The desired time to mine one block.
+   * @param blocks The number of timed blocks between adjustments.
+   * @throws IllegalArgumentException if the interval is not positive or
+   *   blocks is less than 1.
+   */
+  public Retargeter(TargetValidator efloor, Duration interval, int blocks) {
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("Block interval must be positive");
+    } // if
+    if (blocks < 1) {
+      throw new IllegalArgumentException("Retarget window must be at least one block");
+    } // if
+    this.floor = efloor;
+    this.intervalNanos = interval.toNanos();
+    this.window = blocks;
+    this.schedule = new Schedule(new int[] {0}, new TargetValidator[] {efloor}, 1);
+  } // Retargeter(TargetValidator, Duration, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * The targets in effect from given blocks on. Target e applies from
+   * block starts[e] up to block starts[e + 1]. Entries below count never
+   * change.
+   */
+  private static final class Schedule {
+    /**
+     * The first block each target applies to, in increasing order.
+     */
+    final int[] starts;
+
+    /**
+     * The targets.
+     */
+    final TargetValidator[] targets;
+
+    /**
+     * The number of targets.
+     */
+    final int count;
+
+    /**
+     * Create a schedule.
+     *
+     * @param sstarts The first block each target applies to.
+     * @param stargets The targets.
+     * @param scount The number of targets.
+     */
+    Schedule(int[] sstarts, TargetValidator[] stargets, int scount) {
+      this.starts = sstarts;
+      this.targets = stargets;
+      this.count = scount;
+    } // Schedule(int[], TargetValidator[], int)
+
+    /**
+     * Find the target a block had to meet.
+     *
+     * @param num The number of the block.
+     * @return the target.
+     */
+    TargetValidator target(int num) {
+      int lo = 1;
+      int hi = count;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (starts[mid] <= num) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        } // if/else
+      } // while
+      return targets[lo - 1];
+    } // target(int)
+  } // class Schedule
+
+  /**
+   * Start a new target from a block on.
+   *
+   * @param start The first block the target applies to.
+   * @param target The target.
+   */
+  private void adjust(int start, TargetValidator target) {
+    Schedule s = schedule;
+    int[] starts = s.starts;
+    TargetValidator[] targets = s.targets;
+    if (s.count == starts.length) {
+      starts = Arrays.copyOf(starts, 2 * s.count);
+      targets = Arrays.copyOf(targets, 2 * s.count);
+    } // if
+    // Slots at and past count are seen by no reader.
+    starts[s.count] = start;
+    targets[s.count] = target;
+    schedule = new Schedule(starts, targets, s.count + 1);
+  } // adjust(int, TargetValidator)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the easiest target allowed.
+   *
+   * @return the floor validator.
+   */
+  public TargetValidator getFloor() {
+    return this.floor;
+  } // getFloor()
+
+  /**
+   * Get the validator that new blocks should be mined against.
+   *
+   * @return the current validator.
+   */
+  public TargetValidator current() {
+    Schedule s = schedule;
+    return s.targets[s.count - 1];
+  } // current()
+
+  /**
+   * Get the validator a block had to satisfy when it was appended.
+   *
+   * @param num The number of the block.
+   * @return the validator (the current one if there is no block num yet).
+   */
+  public TargetValidator target(int num) {
+    return schedule.target(num);
+  } // target(int)
+
+  /**
+   * Record a block appended to the chain and how long it took to mine,
+   * adjusting the target if this completes a window.
+   *
+   * @param num The number of the block, which must be the next one
+   *   after every block already recorded.
+   * @param nanos The mining time, in nanoseconds, or Block.UNTIMED if
+   *   the block was not timed.
+   */
+  public synchronized void record(int num, long nanos) {
+    if (size == times.length) {
+      times = Arrays.copyOf(times, 2 * size);
+    } // if
+    times[size++] = nanos;
+    if (nanos == Block.UNTIMED) {
+      return;
+    } // if
+    elapsedNanos += Math.max(1, nanos);
+    if (++observed < window) {
+      return;
+    } // if
+    long expected = intervalNanos * window;
+    long actual = Math.min(Math.max(elapsedNanos, expected / MAX_ADJUSTMENT),
+        expected * MAX_ADJUSTMENT);
+    BigInteger next = current().getTarget()
+        .multiply(BigInteger.valueOf(actual))
+        .divide(BigInteger.valueOf(expected))
+        .max(BigInteger.ONE)
+        .min(floor.getTarget());
+    adjust(num + 1, new TargetValidator(next));
+    observed = 0;
+    elapsedNanos = 0;
+  } // record(int, long)
+
+  /**
+   * Forget the blocks that are no longer in the chain, restoring the
+   * target and window from before them.
+   *
+   * @param nsize The number of blocks left in the chain.
+   */
+  public synchronized void truncate(int nsize) {
+    if (nsize >= size) {
+      return;
+    } // if
+    size = nsize;
+    Schedule s = schedule;
+    int count = s.count;
+    while (count > 1 && s.starts[count - 1] > size) {
+      count--;
+    } // while
+    if (count < s.count) {
+      // Older schedules still see the dropped slots, so copy them.
+      schedule = new Schedule(Arrays.copyOf(s.starts, s.starts.length),
+          Arrays.copyOf(s.targets, s.targets.length), count);
+    } // if
+    observed = 0;
+    elapsedNanos = 0;
+    for (int n = schedule.starts[count - 1]; n < size; n++) {
+      if (times[n] != Block.UNTIMED) {
+        observed++;
+        elapsedNanos += Math.max(1, times[n]);
+      } // if
+    } // for
+  } // truncate(int)
+} // class Retargeter
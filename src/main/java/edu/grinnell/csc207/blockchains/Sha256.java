@@ -0,0 +1,430 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * A SHA-256 engine specialized for mining, where every input shares the
+ * same prefix and only the last eight bytes (the nonce) change.
+ *
+ * The compression of every 64-byte input block before the nonce is done
+ * once, when the engine is built, and so are the rounds of the nonce's
+ * block that only read message words before the nonce. When the padding
+ * spills into a final block that holds no nonce bytes, that block's
+ * message schedule is expanded once, too. Each candidate then only
+ * patches the nonce into the final block(s), expands the schedule of
+ * the blocks the nonce touches, and runs the remaining rounds.
+ *
+ * Engines are not thread safe. Each mining thread needs its own.
+ *
+ * @author Mina Bakrac
+ */
+final class Sha256 implements NonceEngine {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bytes in an input block.
+   */
+  static final int BLOCK_BYTES = 64;
+
+  /**
+   * The number of 32-bit words in an input block.
+   */
+  static final int BLOCK_WORDS = 16;
+
+  /**
+   * The number of rounds per compression.
+   */
+  static final int ROUNDS = 64;
+
+  /**
+   * The number of 32-bit words of state.
+   */
+  static final int STATE_WORDS = 8;
+
+  /**
+   * The number of bytes in the length field of the padding.
+   */
+  static final int LENGTH_BYTES = 8;
+
+  /**
+   * The initial hash value.
+   */
+  static final int[] IV = {
+    0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a,
+    0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+  };
+
+  /**
+   * The round constants.
+   */
+  static final int[] K = {
+    0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+    0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+    0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+    0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+    0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+    0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+    0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+    0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+  };
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The hash state after every block before the nonce's block.
+   */
+  private final int[] midstate;
+
+  /**
+   * The working variables after the rounds of the nonce's block that
+   * do not depend on the nonce.
+   */
+  private final int[] partial;
+
+  /**
+   * The number of rounds already folded into partial.
+   */
+  private final int fixedRounds;
+
+  /**
+   * The padded words of the final one or two blocks, nonce included.
+   */
+  private final int[] tail;
+
+  /**
+   * The position of the nonce's first byte in the tail.
+   */
+  private final int nonceOffset;
+
+  /**
+   * The expanded message schedule of the second tail block, when there
+   * is one and the nonce does not reach it (or null).
+   */
+  private final int[] fixedSchedule;
+
+  /**
+   * The message schedule, reused for every compression.
+   */
+  private final int[] w = new int[ROUNDS];
+
+  /**
+   * The running hash state, reused for every candidate.
+   */
+  private final int[] state = new int[STATE_WORDS];
+
+  /**
+   * The hash state between the two tail blocks, when there are two.
+   */
+  private final int[] between = new int[STATE_WORDS];
+
+  /**
+   * The hash of the last candidate tried by firstValid.
+   */
+  private final byte[] candidate = new byte[BlockHasher.HASH_BYTES];
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Build an engine for inputs that consist of prefix followed by an
+   * eight-byte nonce.
+   *
+   * @param prefix The bytes that precede the nonce.
+   */
+  Sha256(byte[] prefix) {
+    int length = prefix.length + Long.BYTES;
+    int blocks = (length + 1 + LENGTH_BYTES + BLOCK_BYTES - 1) / BLOCK_BYTES;
+    int fixedBlocks = prefix.length / BLOCK_BYTES;
+
+    // Fold in every block that precedes the nonce.
+    this.midstate = IV.clone();
+    for (int b = 0; b < fixedBlocks; b++) {
+      loadWords(prefix, b * BLOCK_BYTES, w);
+      compress(midstate, w, 0, midstate, midstate);
+    } // for
+
+    // Lay out the padded tail, leaving zeros where the nonce goes.
+    byte[] bytes = new byte[(blocks - fixedBlocks) * BLOCK_BYTES];
+    int start = fixedBlocks * BLOCK_BYTES;
+    System.arraycopy(prefix, start, bytes, 0, prefix.length - start);
+    this.nonceOffset = prefix.length - start;
+    bytes[nonceOffset + Long.BYTES] = (byte) 0x80;
+    long bits = (long) length * Byte.SIZE;
+    for (int i = 1; i <= LENGTH_BYTES; i++) {
+      bytes[bytes.length - i] = (byte) bits;
+      bits >>>= Byte.SIZE;
+    } // for
+    this.tail = new int[bytes.length / Integer.BYTES];
+    for (int i = 0; i < tail.length; i++) {
+      tail[i] = readInt(bytes, i * Integer.BYTES);
+    } // for
+
+    // When the nonce ends in the first tail block, the second holds only
+    // padding, so its schedule is the same for every nonce.
+    if (tail.length > BLOCK_WORDS && nonceOffset + Long.BYTES <= BLOCK_BYTES) {
+      this.fixedSchedule = new int[ROUNDS];
+      System.arraycopy(tail, BLOCK_WORDS, fixedSchedule, 0, BLOCK_WORDS);
+      expand(fixedSchedule);
+    } else {
+      this.fixedSchedule = null;
+    } // if/else
+
+    // Run the rounds of the nonce's block that only read fixed words.
+    this.fixedRounds = nonceOffset / Integer.BYTES;
+    this.partial = midstate.clone();
+    System.arraycopy(tail, 0, w, 0, fixedRounds);
+    rounds(partial, w, 0, fixedRounds);
+  } // Sha256(byte[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Read a big-endian int.
+   *
+   * @param bytes The bytes to read from.
+   * @param offset Where the int starts.
+   * @return the int.
+   */
+  static int readInt(byte[] bytes, int offset) {
+    return (bytes[offset] << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+        | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+  } // readInt(byte[], int)
+
+  /**
+   * Load one block of big-endian words into the start of a schedule.
+   *
+   * @param bytes The bytes to read from.
+   * @param offset Where the block starts.
+   * @param words Where to put the words.
+   */
+  static void loadWords(byte[] bytes, int offset, int[] words) {
+    for (int i = 0; i < BLOCK_WORDS; i++) {
+      words[i] = readInt(bytes, offset + i * Integer.BYTES);
+    } // for
+  } // loadWords(byte[], int, int[])
+
+  /**
+   * Expand the first sixteen words of a schedule to all sixty-four.
+   *
+   * @param words The schedule.
+   */
+  static void expand(int[] words) {
+    for (int t = BLOCK_WORDS; t < ROUNDS; t++) {
+      int w15 = words[t - 15];
+      int w2 = words[t - 2];
+      int s0 = Integer.rotateRight(w15, 7) ^ Integer.rotateRight(w15, 18) ^ (w15 >>> 3);
+      int s1 = Integer.rotateRight(w2, 17) ^ Integer.rotateRight(w2, 19) ^ (w2 >>> 10);
+      words[t] = words[t - 16] + s0 + words[t - 7] + s1;
+    } // for
+  } // expand(int[])
+
+  /**
+   * Run some rounds of the compression function in place.
+   *
+   * @param v The eight working variables, a through h.
+   * @param words The message schedule.
+   * @param from The first round to run.
+   * @param to The round to stop before.
+   */
+  static void rounds(int[] v, int[] words, int from, int to) {
+    int a = v[0];
+    int b = v[1];
+    int c = v[2];
+    int d = v[3];
+    int e = v[4];
+    int f = v[5];
+    int g = v[6];
+    int h = v[7];
+    for (int t = from; t < to; t++) {
+      int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+      int ch = (e & f) ^ (~e & g);
+      int t1 = h + s1 + ch + K[t] + words[t];
+      int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+      int maj = (a & b) ^ (a & c) ^ (b & c);
+      int t2 = s0 + maj;
+      h = g;
+      g = f;
+      f = e;
+      e = d + t1;
+      d = c;
+      c = b;
+      b = a;
+      a = t1 + t2;
+    } // for
+    v[0] = a;
+    v[1] = b;
+    v[2] = c;
+    v[3] = d;
+    v[4] = e;
+    v[5] = f;
+    v[6] = g;
+    v[7] = h;
+  } // rounds(int[], int[], int, int)
+
+  /**
+   * Finish compressing one block whose first sixteen schedule words are
+   * loaded, starting from working variables that have already been
+   * through some rounds.
+   *
+   * @param start The working variables after the first from rounds.
+   * @param words The schedule, with the first sixteen words loaded.
+   * @param from The number of rounds already run.
+   * @param chain The hash state before this block.
+   * @param out Where to put the new hash state (may be chain).
+   */
+  static void compress(int[] start, int[] words, int from, int[] chain, int[] out) {
+    int[] v = start.clone();
+    expand(words);
+    rounds(v, words, from, ROUNDS);
+    for (int i = 0; i < STATE_WORDS; i++) {
+      out[i] = chain[i] + v[i];
+    } // for
+  } // compress(int[], int[], int, int[], int[])
+
+  /**
+   * Finish compressing one block, reusing this engine's buffers.
+   *
+   * @param start The working variables after the first from rounds.
+   * @param words The block's expanded message schedule.
+   * @param from The number of rounds already run.
+   * @param chain The hash state before this block.
+   */
+  private void finish(int[] start, int[] words, int from, int[] chain) {
+    int[] v = state;
+    System.arraycopy(start, 0, v, 0, STATE_WORDS);
+    rounds(v, words, from, ROUNDS);
+    for (int i = 0; i < STATE_WORDS; i++) {
+      v[i] += chain[i];
+    } // for
+  } // finish(int[], int[], int, int[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the hash state after every block before the nonce's block.
+   *
+   * @return the state; callers must not change it.
+   */
+  int[] midstate() {
+    return this.midstate;
+  } // midstate()
+
+  /**
+   * Get the working variables after the rounds of the nonce's block that
+   * do not depend on the nonce.
+   *
+   * @return the working variables; callers must not change them.
+   */
+  int[] partial() {
+    return this.partial;
+  } // partial()
+
+  /**
+   * Get the number of rounds of the nonce's block already run.
+   *
+   * @return the number of rounds.
+   */
+  int fixedRounds() {
+    return this.fixedRounds;
+  } // fixedRounds()
+
+  /**
+   * Get a copy of the padded words of the final block(s). The nonce
+   * bytes hold whatever nonce was hashed last.
+   *
+   * @return the words.
+   */
+  int[] tail() {
+    return this.tail.clone();
+  } // tail()
+
+  /**
+   * Get the expanded message schedule of the second tail block, if the
+   * nonce does not reach it.
+   *
+   * @return the schedule (or null if there is no second block or the
+   *   nonce reaches it); callers must not change it.
+   */
+  int[] fixedSchedule() {
+    return this.fixedSchedule;
+  } // fixedSchedule()
+
+  /**
+   * Get the position of the nonce's first byte in the tail.
+   *
+   * @return the position, in bytes.
+   */
+  int nonceOffset() {
+    return this.nonceOffset;
+  } // nonceOffset()
+
+  /**
+   * Determine how many nonces each call to firstValid tries.
+   *
+   * @return 1.
+   */
+  @Override
+  public int lanes() {
+    return 1;
+  } // lanes()
+
+  /**
+   * Try one nonce.
+   *
+   * @param start The nonce to try.
+   * @param check The validator the hash must satisfy.
+   * @return 0 if the nonce is valid and -1 otherwise.
+   */
+  @Override
+  public int firstValid(long start, HashValidator check) {
+    hash(start, candidate);
+    return check.isValid(candidate, 0, candidate.length) ? 0 : -1;
+  } // firstValid(long, HashValidator)
+
+  /**
+   * Hash the prefix followed by the given nonce.
+   *
+   * @param nonce The nonce, written big-endian after the prefix.
+   * @param out Where to put the 32-byte hash.
+   */
+  void hash(long nonce, byte[] out) {
+    // Patch the nonce into the tail words, one byte at a time since
+    // it need not be word aligned.
+    for (int i = 0; i < Long.BYTES; i++) {
+      int pos = nonceOffset + i;
+      int shift = (Integer.BYTES - 1 - (pos % Integer.BYTES)) * Byte.SIZE;
+      int b = (int) (nonce >>> ((Long.BYTES - 1 - i) * Byte.SIZE)) & 0xFF;
+      int word = pos / Integer.BYTES;
+      tail[word] = (tail[word] & ~(0xFF << shift)) | (b << shift);
+    } // for
+
+    System.arraycopy(tail, 0, w, 0, BLOCK_WORDS);
+    expand(w);
+    finish(partial, w, fixedRounds, midstate);
+    if (tail.length > BLOCK_WORDS) {
+      System.arraycopy(state, 0, between, 0, STATE_WORDS);
+      if (fixedSchedule != null) {
+        finish(between, fixedSchedule, 0, between);
+      } else {
+        System.arraycopy(tail, BLOCK_WORDS, w, 0, BLOCK_WORDS);
+        expand(w);
+        finish(between, w, 0, between);
+      } // if/else
+    } // if
+
+    for (int i = 0; i < STATE_WORDS; i++) {
+      int s = state[i];
+      out[i * Integer.BYTES] = (byte) (s >>> 24);
+      out[i * Integer.BYTES + 1] = (byte) (s >>> 16);
+      out[i * Integer.BYTES + 2] = (byte) (s >>> 8);
+      out[i * Integer.BYTES + 3] = (byte) s;
+    } // for
+  } // hash(long, byte[])
+} // class Sha256
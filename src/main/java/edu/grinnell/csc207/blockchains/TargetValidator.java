@@ -0,0 +1,161 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigInteger;
+import java.nio.ByteOrder;
+
+/**
+ * Validates hashes whose first 256 bits, read as an unsigned big-endian
+ * number, are at most a target. Lowering the target by any amount makes
+ * mining proportionally harder, so difficulty can change in steps much
+ * finer than a whole zero byte.
+ *
+ * @author Bonsen Yusuf
+ */
+public class TargetValidator implements HashValidator {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of bits in a target.
+   */
+  public static final int TARGET_BITS = 256;
+
+  /**
+   * The number of longs in a target.
+   */
+  static final int TARGET_LONGS = TARGET_BITS / Long.SIZE;
+
+  /**
+   * The largest possible target, which accepts every hash.
+   */
+  public static final BigInteger MAX_TARGET = BigInteger.ONE.shiftLeft(TARGET_BITS)
+      .subtract(BigInteger.ONE);
+
+  /**
+   * Reads big-endian longs out of byte arrays.
+   */
+  private static final VarHandle LONGS =
+      MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The target, most significant long first.
+   */
+  private final long[] words = new long[TARGET_LONGS];
+
+  /**
+   * The target as a number.
+   */
+  private final BigInteger target;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a validator that accepts hashes at most the given target.
+   *
+   * @param max The target, between 0 and MAX_TARGET.
+   * @throws IllegalArgumentException if the target is out of range.
+   */
+  public TargetValidator(BigInteger max) {
+    if (max.signum() < 0 || max.compareTo(MAX_TARGET) > 0) {
+      throw new IllegalArgumentException("Target out of range: " + max);
+    } // if
+    this.target = max;
+    for (int i = 0; i < TARGET_LONGS; i++) {
+      words[i] = max.shiftRight((TARGET_LONGS - 1 - i) * Long.SIZE).longValue();
+    } // for
+  } // TargetValidator(BigInteger)
+
+  /**
+   * Create a validator equivalent to requiring the given number of
+   * leading zero bits.
+   *
+   * @param bits The number of leading zero bits, between 0 and TARGET_BITS.
+   * @return the validator.
+   */
+  public static TargetValidator fromLeadingZeroBits(int bits) {
+    return new TargetValidator(MAX_TARGET.shiftRight(bits));
+  } // fromLeadingZeroBits(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the target.
+   *
+   * @return the target.
+   */
+  public BigInteger getTarget() {
+    return this.target;
+  } // getTarget()
+
+  /**
+   * Get the expected number of attempts needed to find a valid hash.
+   *
+   * @return the expected number of attempts.
+   */
+  public double expectedAttempts() {
+    return Math.pow(2, TARGET_BITS) / (target.doubleValue() + 1);
+  } // expectedAttempts()
+
+  /**
+   * Determine if a hash is at most the target.
+   *
+   * @param hash The hash we're checking.
+   * @return true if the hash is valid and false otherwise.
+   */
+  @Override
+  public boolean isValid(Hash hash) {
+    if (hash.length() * Byte.SIZE < TARGET_BITS) {
+      return false;
+    } // if
+    for (int i = 0; i < TARGET_LONGS; i++) {
+      int cmp = Long.compareUnsigned(hash.word(i), words[i]);
+      if (cmp != 0) {
+        return cmp < 0;
+      } // if
+    } // for
+    return true;
+  } // isValid(Hash)
+
+  /**
+   * Determine if raw hash bytes are at most the target.
+   *
+   * @param bytes An array holding the hash.
+   * @param offset Where the hash starts in bytes.
+   * @param length The number of bytes in the hash.
+   * @return true if the hash is valid and false otherwise.
+   */
+  @Override
+  public boolean isValid(byte[] bytes, int offset, int length) {
+    if (length * Byte.SIZE < TARGET_BITS) {
+      return false;
+    } // if
+    for (int i = 0; i < TARGET_LONGS; i++) {
+      int cmp = Long.compareUnsigned((long) LONGS.get(bytes, offset + i * Long.BYTES), words[i]);
+      if (cmp != 0) {
+        return cmp < 0;
+      } // if
+    } // for
+    return true;
+  } // isValid(byte[], int, int)
+
+  /**
+   * Get a string representation of the validator.
+   *
+   * @return a string representation of the validator.
+   */
+  @Override
+  public String toString() {
+    return String.format("TargetValidator[%064X]", target);
+  } // toString()
+} // class TargetValidator
@@ -1,8 +1,24 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 /**
  * A simple transaction.
  *
+ * Every transaction has a canonical binary encoding, which is what
+ * block hashes cover and what gets persisted: the length of the source
+ * in bytes, the source in UTF-8, the length of the target, the target
+ * in UTF-8, and the amount, with every int big-endian. The encoding is
+ * built when asked for rather than kept, since it is needed only to hash
+ * or persist a block.
+ *
+ * Names are canonicalized with String.intern, so transactions share one
+ * instance of each name and a block costs little more heap than its
+ * references and amounts. Chains give names integer ids of their own
+ * (see UserTable).
+ *
  * @author
  *   Samuel A. Rebelsky
  */
@@ -12,19 +28,19 @@ public class Transaction {
   // +--------+
 
   /**
-   * The source of a transfer.
+   * The source of a transfer, canonicalized.
    */
-  private String source;
+  private final String source;
 
   /**
-   * The target of a transfer.
+   * The target of a transfer, canonicalized.
    */
-  private String target;
+  private final String target;
 
   /**
    * The amount transferred.
    */
-  private int amount;
+  private final int amount;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -42,11 +58,87 @@ public class Transaction {
    *   The funds transfered.
    */
   public Transaction(String src, String tgt, int amt) {
-    this.source = src;
-    this.target = tgt;
+    this.source = src.intern();
+    this.target = tgt.intern();
     this.amount = amt;
   } // Transaction(src)
 
+  /**
+   * Read a transaction in its canonical encoding from the buffer's
+   * position.
+   *
+   * @param buffer
+   *   The buffer to read from.
+   *
+   * @return the transaction.
+   *
+   * @throws IllegalArgumentException
+   *   if the buffer does not hold a complete, well-formed encoding.
+   */
+  public static Transaction readFrom(ByteBuffer buffer) {
+    try {
+      String src = readString(buffer);
+      String tgt = readString(buffer);
+      return new Transaction(src, tgt, buffer.getInt());
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Truncated transaction", e);
+    } // try/catch
+  } // readFrom(ByteBuffer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Read a length-prefixed UTF-8 string.
+   *
+   * @param buffer
+   *   The buffer to read from.
+   *
+   * @return the string.
+   *
+   * @throws IllegalArgumentException
+   *   if the length is out of range.
+   */
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new IllegalArgumentException("Bad string length in transaction: " + length);
+    } // if
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  } // readString(ByteBuffer)
+
+  /**
+   * Find the number of bytes in the UTF-8 encoding of a string, without
+   * encoding it.
+   *
+   * @param str
+   *   The string.
+   *
+   * @return the number of bytes.
+   */
+  private static int utf8Length(String str) {
+    int length = 0;
+    for (int i = 0; i < str.length(); i++) {
+      char c = str.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < str.length()
+          && Character.isLowSurrogate(str.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else {
+        // Other chars, including lone surrogates (encoded as '?').
+        length += Character.isSurrogate(c) ? 1 : 3;
+      } // if/else
+    } // for
+    return length;
+  } // utf8Length(String)
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -78,6 +170,43 @@ public class Transaction {
     return this.amount;
   } // getAmount()
 
+  /**
+   * Get the number of bytes in the canonical encoding.
+   *
+   * @return the length of the encoding.
+   */
+  public int encodedLength() {
+    return 3 * Integer.BYTES + utf8Length(this.source) + utf8Length(this.target);
+  } // encodedLength()
+
+  /**
+   * Get the canonical encoding.
+   *
+   * @return the encoded bytes.
+   */
+  public byte[] getEncoded() {
+    return writeTo(ByteBuffer.allocate(encodedLength())).array();
+  } // getEncoded()
+
+  /**
+   * Put the canonical encoding at the buffer's position, without making
+   * an intermediate copy.
+   *
+   * @param buffer
+   *   The buffer to write to.
+   *
+   * @return the buffer.
+   */
+  public ByteBuffer writeTo(ByteBuffer buffer) {
+    byte[] src = this.source.getBytes(StandardCharsets.UTF_8);
+    byte[] tgt = this.target.getBytes(StandardCharsets.UTF_8);
+    return buffer.putInt(src.length)
+        .put(src)
+        .putInt(tgt.length)
+        .put(tgt)
+        .putInt(this.amount);
+  } // writeTo(ByteBuffer)
+
   /**
    * Convert to string form.
    *
@@ -98,7 +227,7 @@ public class Transaction {
    * @return the hash code.
    */
   public int hashCode() {
-    return this.toString().hashCode();
+    return (31 * this.source.hashCode() + this.target.hashCode()) * 31 + this.amount;
   } // hashCode()
 
   /**
@@ -125,8 +254,9 @@ public class Transaction {
    *   and value.
    */
   public boolean equals(Transaction other) {
-    return other.source.equals(this.source)
-        && other.target.equals(this.target)
+    // Names are canonical, so equal names are the same instance.
+    return other.source == this.source
+        && other.target == this.target
         && other.amount == this.amount;
   } // equals(Transaction)
 } // class Transaction
@@ -0,0 +1,390 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * A bounded pool of pending transactions, which any number of threads
+ * may submit to while a mining loop drains batches for the next blocks.
+ *
+ * Transactions come out in priority order (by default, the order they
+ * were submitted in; ties under a custom priority also go in submission
+ * order). When the pool is full, submit waits for room, and offer waits
+ * only as long as it is told to.
+ *
+ * Transactions taken out by drain or take are in flight until the taker
+ * settles them (once they are in the chain) or requeues them (if mining
+ * them failed), which puts them back in their old place. A transaction
+ * equal to one that is pending, in flight, or (if the pool was given a
+ * way to tell) already settled in the chain is not added again. Whether
+ * a transaction is settled is asked once per submission, before taking
+ * the pool's lock, so that producers never wait on the chain while
+ * holding it.
+ *
+ * @author Mina Bakrac
+ */
+public class TransactionPool {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The most transactions the pool holds.
+   */
+  private final int capacity;
+
+  /**
+   * Guards everything below.
+   */
+  private final ReentrantLock lock = new ReentrantLock();
+
+  /**
+   * Signalled when there is room.
+   */
+  private final Condition notFull = lock.newCondition();
+
+  /**
+   * Signalled when there are transactions.
+   */
+  private final Condition notEmpty = lock.newCondition();
+
+  /**
+   * The pending transactions, in the order they come out.
+   */
+  private final PriorityQueue<Entry> queue;
+
+  /**
+   * The pending transactions, for deduplication.
+   */
+  private final Set<Transaction> pending = new HashSet<>();
+
+  /**
+   * The transactions taken out but not yet settled or requeued.
+   */
+  private final Map<Transaction, Entry> inFlight = new HashMap<>();
+
+  /**
+   * Determines whether a transaction is already settled in the chain.
+   */
+  private final Predicate<Transaction> settled;
+
+  /**
+   * The sequence number of the next submission.
+   */
+  private long nextSeq = 0;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a pool that releases transactions in submission order.
+   *
+   * @param pcapacity The most transactions the pool holds.
+   * @throws IllegalArgumentException if pcapacity is less than 1.
+   */
+  public TransactionPool(int pcapacity) {
+    this(pcapacity, (a, b) -> 0);
+  } // TransactionPool(int)
+
+  /**
+   * Create a pool that releases transactions in priority order.
+   *
+   * @param pcapacity The most transactions the pool holds.
+   * @param priority Orders the transactions; those that compare less
+   *   come out first.
+   * @throws IllegalArgumentException if pcapacity is less than 1.
+   */
+  public TransactionPool(int pcapacity, Comparator<Transaction> priority) {
+    this(pcapacity, priority, (t) -> false);
+  } // TransactionPool(int, Comparator<Transaction>)
+
+  /**
+   * Create a pool that releases transactions in priority order and turns
+   * away those already settled.
+   *
+   * @param pcapacity The most transactions the pool holds.
+   * @param priority Orders the transactions; those that compare less
+   *   come out first.
+   * @param psettled Determines whether a transaction is already settled
+   *   in the chain, such as chain::contains.
+   * @throws IllegalArgumentException if pcapacity is less than 1.
+   */
+  public TransactionPool(int pcapacity, Comparator<Transaction> priority,
+      Predicate<Transaction> psettled) {
+    if (pcapacity < 1) {
+      throw new IllegalArgumentException("A pool needs room for at least one transaction.");
+    } // if
+    this.capacity = pcapacity;
+    Comparator<Entry> byPriority = Comparator.comparing((e) -> e.transaction, priority);
+    this.queue = new PriorityQueue<>(byPriority.thenComparingLong((e) -> e.seq));
+    this.settled = psettled;
+  } // TransactionPool(int, Comparator<Transaction>, Predicate<Transaction>)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * A pending transaction and when it was submitted.
+   */
+  private static final class Entry {
+    /**
+     * The transaction.
+     */
+    final Transaction transaction;
+
+    /**
+     * Its sequence number.
+     */
+    final long seq;
+
+    /**
+     * Create an entry.
+     *
+     * @param etransaction The transaction.
+     * @param eseq Its sequence number.
+     */
+    Entry(Transaction etransaction, long eseq) {
+      this.transaction = etransaction;
+      this.seq = eseq;
+    } // Entry(Transaction, long)
+  } // class Entry
+
+  /**
+   * Determine if a transaction is pending or in flight. Called with the
+   * lock held.
+   *
+   * @param transaction The transaction.
+   * @return true if an equal transaction is in the pool or in flight.
+   */
+  private boolean isKnown(Transaction transaction) {
+    return pending.contains(transaction) || inFlight.containsKey(transaction);
+  } // isKnown(Transaction)
+
+  /**
+   * Add a transaction to the pool, which must have room. Called with the
+   * lock held.
+   *
+   * @param transaction The transaction.
+   */
+  private void add(Transaction transaction) {
+    pending.add(transaction);
+    queue.add(new Entry(transaction, nextSeq++));
+    notEmpty.signal();
+  } // add(Transaction)
+
+  /**
+   * Remove up to max transactions. Called with the lock held.
+   *
+   * @param max The most to remove.
+   * @return the transactions, in priority order.
+   */
+  private List<Transaction> remove(int max) {
+    List<Transaction> batch = new ArrayList<>(Math.min(max, queue.size()));
+    while (batch.size() < max && !queue.isEmpty()) {
+      Entry e = queue.poll();
+      pending.remove(e.transaction);
+      inFlight.put(e.transaction, e);
+      batch.add(e.transaction);
+    } // while
+    if (!batch.isEmpty()) {
+      notFull.signalAll();
+    } // if
+    return batch;
+  } // remove(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the most transactions the pool holds.
+   *
+   * @return the capacity.
+   */
+  public int getCapacity() {
+    return this.capacity;
+  } // getCapacity()
+
+  /**
+   * Get the number of pending transactions.
+   *
+   * @return the number of transactions.
+   */
+  public int size() {
+    lock.lock();
+    try {
+      return queue.size();
+    } finally {
+      lock.unlock();
+    } // try/finally
+  } // size()
+
+  /**
+   * Determine if a transaction is pending.
+   *
+   * @param transaction The transaction.
+   * @return true if an equal transaction is in the pool.
+   */
+  public boolean contains(Transaction transaction) {
+    lock.lock();
+    try {
+      return pending.contains(transaction);
+    } finally {
+      lock.unlock();
+    } // try/finally
+  } // contains(Transaction)
+
+  /**
+   * Add a transaction, waiting for room if the pool is full.
+   *
+   * @param transaction The transaction.
+   * @return true if it was added, or false if an equal transaction is
+   *   already pending, in flight, or settled.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean submit(Transaction transaction) throws InterruptedException {
+    if (settled.test(transaction)) {
+      return false;
+    } // if
+    lock.lockInterruptibly();
+    try {
+      while (!isKnown(transaction) && queue.size() >= capacity) {
+        notFull.await();
+      } // while
+      if (isKnown(transaction)) {
+        return false;
+      } // if
+      add(transaction);
+      return true;
+    } finally {
+      lock.unlock();
+    } // try/finally
+  } // submit(Transaction)
+
+  /**
+   * Add a transaction, waiting at most the given time for room.
+   *
+   * @param transaction The transaction.
+   * @param timeout How long to wait for room.
+   * @param unit The unit of timeout.
+   * @return true if it was added, or false if an equal transaction is
+   *   already pending, in flight, or settled, or the pool stayed full.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean offer(Transaction transaction, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    if (settled.test(transaction)) {
+      return false;
+    } // if
+    long nanos = unit.toNanos(timeout);
+    lock.lockInterruptibly();
+    try {
+      while (!isKnown(transaction) && queue.size() >= capacity) {
+        if (nanos <= 0) {
+          return false;
+        } // if
+        nanos = notFull.awaitNanos(nanos);
+      } // while
+      if (isKnown(transaction)) {
+        return false;
+      } // if
+      add(transaction);
+      return true;
+    } finally {
+      lock.unlock();
+    } // try/finally
+  } // offer(Transaction, long, TimeUnit)
+
+  /**
+   * Remove up to max transactions without waiting. They are in flight
+   * until settled or requeued.
+   *
+   * @param max The most transactions to remove.
+   * @return the transactions, in priority order (possibly none).
+   */
+  public List<Transaction> drain(int max) {
+    lock.lock();
+    try {
+      return remove(max);
+    } finally {
+      lock.unlock();
+    } // try/finally
+  } // drain(int)
+
+  /**
+   * Remove up to max transactions, waiting until there is at least one.
+   * They are in flight until settled or requeued.
+   *
+   * @param max The most transactions to remove; at least 1.
+   * @return the transactions, in priority order.
+   * @throws IllegalArgumentException if max is less than 1.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public List<Transaction> take(int max) throws InterruptedException {
+    if (max < 1) {
+      throw new IllegalArgumentException("Cannot take fewer than one transaction: " + max);
+    } // if
+    lock.lockInterruptibly();
+    try {
+      while (queue.isEmpty()) {
+        notEmpty.await();
+      } // while
+      return remove(max);
+    } finally {
+      lock.unlock();
+    } // try/finally
+  } // take(int)
+
+  /**
+   * Note that transactions taken out are now in the chain, so they are
+   * no longer in flight.
+   *
+   * @param batch The transactions.
+   */
+  public void settle(Collection<Transaction> batch) {
+    lock.lock();
+    try {
+      for (Transaction t : batch) {
+        inFlight.remove(t);
+      } // for
+    } finally {
+      lock.unlock();
+    } // try/finally
+  } // settle(Collection<Transaction>)
+
+  /**
+   * Put transactions taken out back in their old places, since they did
+   * not make it into the chain. They were admitted once, so they go back
+   * even if that overfills the pool.
+   *
+   * @param batch The transactions.
+   */
+  public void requeue(Collection<Transaction> batch) {
+    lock.lock();
+    try {
+      for (Transaction t : batch) {
+        Entry e = inFlight.remove(t);
+        if (e != null) {
+          pending.add(t);
+          queue.add(e);
+          notEmpty.signal();
+        } // if
+      } // for
+    } finally {
+      lock.unlock();
+    } // try/finally
+  } // requeue(Collection<Transaction>)
+} // class TransactionPool
@@ -0,0 +1,242 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * The distinct users of a chain, in the order they first appear, with
+ * the numbers of the blocks each one appears in. The block numbers of a
+ * user (their posting list) are kept in ascending order in an int
+ * array, so a user's history is found without scanning the chain. The
+ * directory also keeps the ids of the users of each block, so that
+ * queries match users by id rather than by name.
+ *
+ * The empty name, which is the source of deposits, is not a user.
+ *
+ * Blocks must be added in order and removed from the end, as the chain
+ * does. The directory is not thread safe; its chain guards it.
+ *
+ * @author Mina Bakrac
+ */
+class UserDirectory {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of users we have room for at first.
+   */
+  static final int INITIAL_USERS = 64;
+
+  /**
+   * The number of blocks we have room for at first.
+   */
+  static final int INITIAL_BLOCKS = 64;
+
+  /**
+   * The number of block numbers we have room for in a new posting list.
+   */
+  static final int INITIAL_POSTINGS = 4;
+
+  /**
+   * An empty posting list.
+   */
+  private static final int[] NONE = new int[0];
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The block numbers of the user with each id (or null if the user has
+   * never been seen).
+   */
+  private int[][] postings = new int[INITIAL_USERS][];
+
+  /**
+   * The number of block numbers in each posting list.
+   */
+  private int[] counts = new int[INITIAL_USERS];
+
+  /**
+   * The ids of the users, in the order they first appear.
+   */
+  private int[] order = new int[INITIAL_USERS];
+
+  /**
+   * The number of users.
+   */
+  private int size = 0;
+
+  /**
+   * The ids of the users of each block, two per transaction (source,
+   * then target).
+   */
+  private int[][] blocks = new int[INITIAL_BLOCKS][];
+
+  /**
+   * The number of blocks.
+   */
+  private int height = 0;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Note that a user appears in a block.
+   *
+   * @param id The id of the user.
+   * @param num The number of the block.
+   */
+  private void post(int id, int num) {
+    if (id == UserTable.NOBODY) {
+      return;
+    } // if
+    if (id >= postings.length) {
+      int capacity = Math.max(2 * postings.length, id + 1);
+      postings = Arrays.copyOf(postings, capacity);
+      counts = Arrays.copyOf(counts, capacity);
+    } // if
+    int count = counts[id];
+    if (count > 0 && postings[id][count - 1] == num) {
+      return; // Already posted for this block.
+    } // if
+    if (count == 0) {
+      if (size == order.length) {
+        order = Arrays.copyOf(order, 2 * order.length);
+      } // if
+      order[size++] = id;
+    } // if
+    if (postings[id] == null) {
+      postings[id] = new int[INITIAL_POSTINGS];
+    } else if (count == postings[id].length) {
+      postings[id] = Arrays.copyOf(postings[id], 2 * count);
+    } // if/else
+    postings[id][count] = num;
+    counts[id] = count + 1;
+  } // post(int, int)
+
+  /**
+   * Forget that a user appears in a block, if we noted it.
+   *
+   * @param id The id of the user.
+   * @param num The number of the block, which must be the last block.
+   */
+  private void unpost(int id, int num) {
+    if (id < counts.length && counts[id] > 0 && postings[id][counts[id] - 1] == num) {
+      counts[id]--;
+    } // if
+  } // unpost(int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Note the users of a block added to the end of the chain.
+   *
+   * @param ids The ids of the users of the block, from UserTable.
+   */
+  void add(int[] ids) {
+    if (height == blocks.length) {
+      blocks = Arrays.copyOf(blocks, 2 * height);
+    } // if
+    int num = height++;
+    blocks[num] = ids;
+    for (int id : ids) {
+      post(id, num);
+    } // for
+  } // add(int[])
+
+  /**
+   * Forget the users of the last block, which has been removed.
+   *
+   * @return the ids of the users of the block.
+   */
+  int[] remove() {
+    int num = --height;
+    int[] ids = blocks[num];
+    blocks[num] = null;
+    for (int id : ids) {
+      unpost(id, num);
+    } // for
+    // Users who first appeared in the block are last in order.
+    while (size > 0 && counts[order[size - 1]] == 0) {
+      size--;
+    } // while
+    return ids;
+  } // remove()
+
+  /**
+   * Get the ids of the users of a block.
+   *
+   * @param num The number of the block.
+   * @return the ids, two per transaction (source, then target). Callers
+   *   must not change them.
+   */
+  int[] users(int num) {
+    return blocks[num];
+  } // users(int)
+
+  /**
+   * Get the ids of the users of a range of blocks.
+   *
+   * @param from The number of the first block.
+   * @param to The number of the block after the last one.
+   * @return the ids of the users of each block, as from users(int).
+   */
+  int[][] users(int from, int to) {
+    return Arrays.copyOfRange(blocks, from, to);
+  } // users(int, int)
+
+  /**
+   * Get the number of users.
+   *
+   * @return the number of users.
+   */
+  int size() {
+    return this.size;
+  } // size()
+
+  /**
+   * Get a user's id.
+   *
+   * @param i Where the user is in the order users first appear.
+   * @return the id of the user.
+   */
+  int get(int i) {
+    return order[i];
+  } // get(int)
+
+  /**
+   * Get the number of blocks a user appears in.
+   *
+   * @param id The id of the user (or UserTable.UNKNOWN).
+   * @return the number of blocks.
+   */
+  int count(int id) {
+    return (id >= 0 && id < counts.length) ? counts[id] : 0;
+  } // count(int)
+
+  /**
+   * Get the numbers of the blocks a user appears in.
+   *
+   * @param id The id of the user (or UserTable.UNKNOWN).
+   * @return a copy of the user's posting list, in ascending order.
+   */
+  int[] blocks(int id) {
+    int count = count(id);
+    return (count == 0) ? NONE : Arrays.copyOf(postings[id], count);
+  } // blocks(int)
+
+  /**
+   * Get the number of one of the blocks a user appears in.
+   *
+   * @param id The id of the user.
+   * @param i Which of the user's blocks, counting from 0.
+   * @return the number of that block.
+   */
+  int block(int id, int i) {
+    return postings[id][i];
+  } // block(int, int)
+} // class UserDirectory
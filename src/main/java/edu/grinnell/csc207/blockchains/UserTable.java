@@ -0,0 +1,173 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The user names of one chain, each given a small integer id, so that
+ * the ledger, checkpoints, and directory of the chain can index arrays
+ * by user. Ids are handed out densely from 0, in the order names first
+ * appear in the chain, and never reused. The empty name, which is the
+ * source of deposits, is always id 0.
+ *
+ * Only names in blocks the chain has appended are added, so the table
+ * holds at most the chain's distinct users (including those of blocks
+ * since removed). Looking a name up never adds it.
+ *
+ * Only one thread at a time may add names; its chain sees to that.
+ * Looking up an id may happen on any thread, without the chain's lock.
+ *
+ * @author Mina Bakrac
+ */
+class UserTable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The id returned for names that are not in the table.
+   */
+  static final int UNKNOWN = -1;
+
+  /**
+   * The id of the empty name.
+   */
+  static final int NOBODY = 0;
+
+  /**
+   * The number of names we have room for at first.
+   */
+  static final int INITIAL_CAPACITY = 64;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The id of each name.
+   */
+  private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+
+  /**
+   * The name with each id. Only the writer and readers holding the
+   * chain's lock read this.
+   */
+  private String[] names = new String[INITIAL_CAPACITY];
+
+  /**
+   * The number of names.
+   */
+  private int count = 0;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a table that holds only the empty name.
+   */
+  UserTable() {
+    intern("");
+  } // UserTable()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the id of a name, adding the name if it is new.
+   *
+   * @param name The name.
+   * @return its id.
+   */
+  private int intern(String name) {
+    Integer id = ids.get(name);
+    if (id != null) {
+      return id;
+    } // if
+    if (count == names.length) {
+      names = Arrays.copyOf(names, 2 * count);
+    } // if
+    names[count] = name;
+    ids.put(name, count);
+    return count++;
+  } // intern(String)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the ids of the source and target of each transaction in a block
+   * the chain is appending, adding any new names.
+   *
+   * @param blk The block.
+   * @return the ids, two per transaction (source, then target), in the
+   *   order of the transactions.
+   */
+  int[] intern(Block blk) {
+    List<Transaction> transactions = blk.getTransactions();
+    int[] result = new int[2 * transactions.size()];
+    int i = 0;
+    for (Transaction t : transactions) {
+      result[i++] = intern(t.getSource());
+      result[i++] = intern(t.getTarget());
+    } // for
+    return result;
+  } // intern(Block)
+
+  /**
+   * Get the ids of the source and target of each transaction in a block
+   * the chain has appended.
+   *
+   * @param blk The block.
+   * @return the ids, two per transaction (source, then target), in the
+   *   order of the transactions.
+   * @throws IllegalStateException if the chain never appended the block.
+   */
+  int[] idsOf(Block blk) {
+    List<Transaction> transactions = blk.getTransactions();
+    int[] result = new int[2 * transactions.size()];
+    int i = 0;
+    for (Transaction t : transactions) {
+      result[i++] = idOf(t.getSource());
+      result[i++] = idOf(t.getTarget());
+      if (result[i - 2] == UNKNOWN || result[i - 1] == UNKNOWN) {
+        throw new IllegalStateException("Block " + blk.getNum() + " was never appended");
+      } // if
+    } // for
+    return result;
+  } // idsOf(Block)
+
+  /**
+   * Get the id of a name without adding it.
+   *
+   * @param name The name.
+   * @return its id, or UNKNOWN if no block the chain appended has used
+   *   the name.
+   */
+  int idOf(String name) {
+    Integer id = (name == null) ? null : ids.get(name);
+    return (id == null) ? UNKNOWN : id;
+  } // idOf(String)
+
+  /**
+   * Get the name with an id.
+   *
+   * @param id The id.
+   * @return the name.
+   */
+  String name(int id) {
+    return names[id];
+  } // name(int)
+
+  /**
+   * Get the number of names in the table.
+   *
+   * @return the number of names.
+   */
+  int size() {
+    return count;
+  } // size()
+} // class UserTable
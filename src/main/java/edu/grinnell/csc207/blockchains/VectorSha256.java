@@ -0,0 +1,313 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A multi-lane version of the Sha256 mining engine that hashes one
+ * nonce per SIMD lane using the (incubating) Vector API. It shares the
+ * scalar engine's precomputed midstate and early rounds; only the work
+ * that depends on the nonce runs in vectors.
+ *
+ * This class is only compiled by the vector profile, and must only be
+ * loaded when the jdk.incubator.vector module is present; MiningEngine
+ * loads it reflectively after checking that.
+ *
+ * Engines are not thread safe. Each mining thread needs its own.
+ *
+ * @author Mina Bakrac
+ */
+final class VectorSha256 implements NonceEngine {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The vector shape we compute with.
+   */
+  static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of lanes.
+   */
+  private final int lanes = SPECIES.length();
+
+  /**
+   * The hash state after every block before the nonce's block, in
+   * every lane. Like all of the lane arrays, word i of lane j is at
+   * i * lanes + j.
+   */
+  private final int[] midstate = new int[Sha256.STATE_WORDS * lanes];
+
+  /**
+   * The working variables after the fixed rounds of the nonce's block,
+   * in every lane.
+   */
+  private final int[] partial = new int[Sha256.STATE_WORDS * lanes];
+
+  /**
+   * The number of rounds already folded into partial.
+   */
+  private final int fixedRounds;
+
+  /**
+   * The padded words of the final one or two blocks, in every lane, with
+   * each lane's nonce patched in.
+   */
+  private final int[] tail;
+
+  /**
+   * The tail words that hold nonce bytes (zero where the nonce goes),
+   * with the index of each in the tail.
+   */
+  private final int[] nonceWords;
+
+  /**
+   * The indices in the tail of nonceWords.
+   */
+  private final int[] nonceIndices;
+
+  /**
+   * The position of the nonce's first byte in the tail.
+   */
+  private final int nonceOffset;
+
+  /**
+   * The expanded message schedule of the second tail block, in every
+   * lane, when the nonce does not reach it (or null).
+   */
+  private final int[] fixedSchedule;
+
+  /**
+   * The message schedule, in every lane, reused for every compression.
+   * Keeping vectors in int arrays rather than IntVector arrays lets the
+   * JIT keep them in registers instead of boxing them.
+   */
+  private final int[] w = new int[Sha256.ROUNDS * lanes];
+
+  /**
+   * The hash state, in every lane, reused for every compression.
+   */
+  private final int[] state = new int[Sha256.STATE_WORDS * lanes];
+
+  /**
+   * The hash state between the two tail blocks, when there are two.
+   */
+  private final int[] between = new int[Sha256.STATE_WORDS * lanes];
+
+  /**
+   * The hash of the lane being checked.
+   */
+  private final byte[] candidate = new byte[BlockHasher.HASH_BYTES];
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Build a multi-lane engine for inputs that consist of prefix followed
+   * by an eight-byte nonce.
+   *
+   * @param prefix The bytes that precede the nonce.
+   */
+  VectorSha256(byte[] prefix) {
+    Sha256 scalar = new Sha256(prefix);
+    broadcast(scalar.midstate(), midstate);
+    broadcast(scalar.partial(), partial);
+    this.fixedRounds = scalar.fixedRounds();
+    this.nonceOffset = scalar.nonceOffset();
+    int[] words = scalar.tail();
+    this.tail = new int[words.length * lanes];
+    broadcast(words, tail);
+    int[] schedule = scalar.fixedSchedule();
+    if (schedule != null) {
+      this.fixedSchedule = new int[schedule.length * lanes];
+      broadcast(schedule, fixedSchedule);
+    } else {
+      this.fixedSchedule = null;
+    } // if/else
+    int first = nonceOffset / Integer.BYTES;
+    int last = (nonceOffset + Long.BYTES - 1) / Integer.BYTES;
+    this.nonceIndices = new int[last - first + 1];
+    this.nonceWords = new int[last - first + 1];
+    for (int i = 0; i < nonceIndices.length; i++) {
+      nonceIndices[i] = first + i;
+      nonceWords[i] = words[first + i];
+    } // for
+  } // VectorSha256(byte[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Copy each word into every lane.
+   *
+   * @param words The words.
+   * @param into The lane array to fill.
+   */
+  private void broadcast(int[] words, int[] into) {
+    for (int i = 0; i < words.length; i++) {
+      Arrays.fill(into, i * lanes, (i + 1) * lanes, words[i]);
+    } // for
+  } // broadcast(int[], int[])
+
+  /**
+   * Load word i of a lane array.
+   *
+   * @param array The lane array.
+   * @param i The word.
+   * @return that word in every lane.
+   */
+  private IntVector word(int[] array, int i) {
+    return IntVector.fromArray(SPECIES, array, i * lanes);
+  } // word(int[], int)
+
+  /**
+   * Rotate every lane right. (JDK 17 does not compile the ROR operator
+   * to vector instructions, but it does compile shifts.)
+   *
+   * @param v The lanes.
+   * @param n The number of bits to rotate by.
+   * @return the rotated lanes.
+   */
+  private static IntVector ror(IntVector v, int n) {
+    return v.lanewise(VectorOperators.LSHR, n)
+        .or(v.lanewise(VectorOperators.LSHL, Integer.SIZE - n));
+  } // ror(IntVector, int)
+
+  /**
+   * Load and expand the message schedule of one tail block into w.
+   *
+   * @param block Which tail block (0 or 1).
+   */
+  private void schedule(int block) {
+    System.arraycopy(tail, block * Sha256.BLOCK_WORDS * lanes, w, 0,
+        Sha256.BLOCK_WORDS * lanes);
+    for (int t = Sha256.BLOCK_WORDS; t < Sha256.ROUNDS; t++) {
+      IntVector w15 = word(w, t - 15);
+      IntVector w2 = word(w, t - 2);
+      IntVector s0 = ror(w15, 7).lanewise(VectorOperators.XOR, ror(w15, 18))
+          .lanewise(VectorOperators.XOR, w15.lanewise(VectorOperators.LSHR, 3));
+      IntVector s1 = ror(w2, 17).lanewise(VectorOperators.XOR, ror(w2, 19))
+          .lanewise(VectorOperators.XOR, w2.lanewise(VectorOperators.LSHR, 10));
+      word(w, t - 16).add(s0).add(word(w, t - 7)).add(s1).intoArray(w, t * lanes);
+    } // for
+  } // schedule(int)
+
+  /**
+   * Compress one tail block.
+   *
+   * @param words The block's expanded message schedule, in every lane.
+   * @param start The working variables after the first from rounds.
+   * @param from The number of rounds already run.
+   * @param chain The hash state before this block.
+   */
+  private void compress(int[] words, int[] start, int from, int[] chain) {
+
+    IntVector a = word(start, 0);
+    IntVector b = word(start, 1);
+    IntVector c = word(start, 2);
+    IntVector d = word(start, 3);
+    IntVector e = word(start, 4);
+    IntVector f = word(start, 5);
+    IntVector g = word(start, 6);
+    IntVector h = word(start, 7);
+    for (int t = from; t < Sha256.ROUNDS; t++) {
+      IntVector s1 = ror(e, 6).lanewise(VectorOperators.XOR, ror(e, 11))
+          .lanewise(VectorOperators.XOR, ror(e, 25));
+      IntVector ch = e.and(f).lanewise(VectorOperators.XOR,
+          e.lanewise(VectorOperators.NOT).and(g));
+      IntVector t1 = h.add(s1).add(ch).add(Sha256.K[t]).add(word(words, t));
+      IntVector s0 = ror(a, 2).lanewise(VectorOperators.XOR, ror(a, 13))
+          .lanewise(VectorOperators.XOR, ror(a, 22));
+      IntVector maj = a.and(b).lanewise(VectorOperators.XOR, a.and(c))
+          .lanewise(VectorOperators.XOR, b.and(c));
+      h = g;
+      g = f;
+      f = e;
+      e = d.add(t1);
+      d = c;
+      c = b;
+      b = a;
+      a = t1.add(s0.add(maj));
+    } // for
+    word(chain, 0).add(a).intoArray(state, 0);
+    word(chain, 1).add(b).intoArray(state, lanes);
+    word(chain, 2).add(c).intoArray(state, 2 * lanes);
+    word(chain, 3).add(d).intoArray(state, 3 * lanes);
+    word(chain, 4).add(e).intoArray(state, 4 * lanes);
+    word(chain, 5).add(f).intoArray(state, 5 * lanes);
+    word(chain, 6).add(g).intoArray(state, 6 * lanes);
+    word(chain, 7).add(h).intoArray(state, 7 * lanes);
+  } // compress(int[], int[], int, int[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many nonces each call to firstValid tries.
+   *
+   * @return the number of lanes.
+   */
+  @Override
+  public int lanes() {
+    return this.lanes;
+  } // lanes()
+
+  /**
+   * Hash consecutive nonces, one per lane, and check them in order.
+   *
+   * @param start The nonce for lane 0.
+   * @param check The validator the hash must satisfy.
+   * @return the lane of the first valid nonce, or -1 if there is none.
+   */
+  @Override
+  public int firstValid(long start, HashValidator check) {
+    // Patch each lane's nonce into the words that hold nonce bytes.
+    for (int i = 0; i < nonceIndices.length; i++) {
+      Arrays.fill(tail, nonceIndices[i] * lanes, (nonceIndices[i] + 1) * lanes, nonceWords[i]);
+    } // for
+    for (int lane = 0; lane < lanes; lane++) {
+      long nonce = start + lane;
+      for (int i = 0; i < Long.BYTES; i++) {
+        int pos = nonceOffset + i;
+        int shift = (Integer.BYTES - 1 - (pos % Integer.BYTES)) * Byte.SIZE;
+        int b = (int) (nonce >>> ((Long.BYTES - 1 - i) * Byte.SIZE)) & 0xFF;
+        tail[(pos / Integer.BYTES) * lanes + lane] |= b << shift;
+      } // for
+    } // for
+
+    schedule(0);
+    compress(w, partial, fixedRounds, midstate);
+    if (tail.length > Sha256.BLOCK_WORDS * lanes) {
+      System.arraycopy(state, 0, between, 0, between.length);
+      if (fixedSchedule == null) {
+        schedule(1);
+      } // if
+      compress((fixedSchedule != null) ? fixedSchedule : w, between, 0, between);
+    } // if
+
+    for (int lane = 0; lane < lanes; lane++) {
+      for (int i = 0; i < Sha256.STATE_WORDS; i++) {
+        int s = state[i * lanes + lane];
+        candidate[i * Integer.BYTES] = (byte) (s >>> 24);
+        candidate[i * Integer.BYTES + 1] = (byte) (s >>> 16);
+        candidate[i * Integer.BYTES + 2] = (byte) (s >>> 8);
+        candidate[i * Integer.BYTES + 3] = (byte) s;
+      } // for
+      if (check.isValid(candidate, 0, candidate.length)) {
+        return lane;
+      } // if
+    } // for
+    return -1;
+  } // firstValid(long, HashValidator)
+} // class VectorSha256
@@ -3,13 +3,21 @@ package edu.grinnell.csc207.main;
 import edu.grinnell.csc207.blockchains.Block;
 import edu.grinnell.csc207.blockchains.BlockChain;
 import edu.grinnell.csc207.blockchains.HashValidator;
+import edu.grinnell.csc207.blockchains.LeadingZeroBitsValidator;
+import edu.grinnell.csc207.blockchains.MiningJob;
+import edu.grinnell.csc207.blockchains.NonceCheckpoint;
 import edu.grinnell.csc207.blockchains.Transaction;
 import edu.grinnell.csc207.util.IOUtils;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Iterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A simple UI for our BlockChain class.
@@ -27,6 +35,27 @@ public class BlockChainUI {
    */
   static final int VALIDATOR_BYTES = 3;
 
+  /**
+   * The number of threads used for mining.
+   */
+  static final int MINING_THREADS = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * How long we mine before giving up.
+   */
+  static final Duration MINING_TIMEOUT = Duration.ofMinutes(5);
+
+  /**
+   * How often (in seconds) we report mining progress.
+   */
+  static final int PROGRESS_SECONDS = 1;
+
+  /**
+   * Where we save mining progress, so that a search cut short by a
+   * timeout or restart can pick up where it left off.
+   */
+  static final Path CHECKPOINT_FILE = Path.of("mining.checkpoint");
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -65,18 +94,9 @@ public class BlockChainUI {
     BufferedReader eyes = new BufferedReader(new InputStreamReader(System.in));
 
     // Set up our blockchain.
-    HashValidator validator = (h) -> {
-      if (h.length() < VALIDATOR_BYTES) {
-        return false;
-      } // end of if
-      for (int v = 0; v < VALIDATOR_BYTES; v++) {
-        if (h.get(v) != 0) {
-          return false;
-        } //end of if
-      } // end of if
-      return true;
-    };
-    BlockChain chain = new BlockChain(validator);
+    HashValidator validator = new LeadingZeroBitsValidator(VALIDATOR_BYTES * Byte.SIZE);
+    BlockChain chain = new BlockChain(validator, MINING_THREADS);
+    NonceCheckpoint checkpoint = new NonceCheckpoint(CHECKPOINT_FILE);
 
     instructions(pen);
 
@@ -95,8 +115,21 @@ public class BlockChainUI {
           String source = IOUtils.readLine(pen, eyes, "Source (return for deposit): ");
           String target = IOUtils.readLine(pen, eyes, "Target: ");
           int amount = IOUtils.readInt(pen, eyes, "Amount: ");
-          Block minedBlock = chain.mine(new Transaction(source, target, amount));
-          pen.println("Nonce: " + minedBlock.getNonce());
+          MiningJob job = chain.mineAsync(new Transaction(source, target, amount),
+              MINING_TIMEOUT, null, checkpoint);
+          Block minedBlock = null;
+          while (minedBlock == null) {
+            try {
+              minedBlock = job.get(PROGRESS_SECONDS, TimeUnit.SECONDS);
+              pen.println("Nonce: " + minedBlock.getNonce());
+            } catch (TimeoutException e) {
+              pen.printf("Tried %d nonces...\n", job.getAttempts());
+            } catch (ExecutionException e) {
+              pen.printf("Gave up after %d nonces: %s\n", job.getAttempts(),
+                  e.getCause().getMessage());
+              break;
+            } // try/catch
+          } // while
         } // case mine
         case "append" -> {
           String source = IOUtils.readLine(pen, eyes, "Source (return for deposit): ");
@@ -135,7 +168,7 @@ public class BlockChainUI {
         } // case users
         case "balance" -> {
           String user = IOUtils.readLine(pen, eyes, "User: ");
-          int balance = chain.balance(user);
+          long balance = chain.balance(user);
           pen.printf("%s's balance is %d\n", user, balance);
         } // case balance
         case "transactions" -> {
@@ -158,6 +191,7 @@ public class BlockChainUI {
       } // end
     } // end of switch
     pen.printf("\nGoodbye\n");
+    chain.close();
     eyes.close();
     pen.close();
   } // main(String[])
@@ -0,0 +1,82 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.Hash;
+import edu.grinnell.csc207.blockchains.Miner;
+import edu.grinnell.csc207.blockchains.MiningEngine;
+import edu.grinnell.csc207.blockchains.MiningJob;
+import edu.grinnell.csc207.blockchains.Transaction;
+
+import java.io.PrintWriter;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Compare the hash rates of the mining engines. To include the vector
+ * engine, build with the vector profile and run with
+ * <code>--add-modules jdk.incubator.vector</code>.
+ *
+ * @author Mina Bakrac
+ */
+public class MiningBenchmark {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How long to warm up each engine before measuring.
+   */
+  static final Duration WARMUP = Duration.ofSeconds(2);
+
+  /**
+   * How long to measure each engine.
+   */
+  static final Duration MEASURE = Duration.ofSeconds(5);
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Mine with a validator that accepts nothing until the time runs out.
+   *
+   * @param miner The miner to run.
+   * @param time How long to run.
+   * @return the number of hashes per second.
+   */
+  static double rate(Miner miner, Duration time) throws InterruptedException {
+    long start = System.nanoTime();
+    MiningJob job = miner.start(1, new Transaction("Benchmark", "Anyone", 1),
+        new Hash(new byte[] {1, 2, 3}), (h) -> false, time);
+    try {
+      job.get();
+    } catch (ExecutionException e) {
+      // The deadline passed, as it always does.
+    } // try/catch
+    return job.getAttempts() * 1e9 / (System.nanoTime() - start);
+  } // rate(Miner, Duration)
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args The number of workers (by default, one).
+   */
+  public static void main(String[] args) throws Exception {
+    PrintWriter pen = new PrintWriter(System.out, true);
+    int workers = (args.length > 0) ? Integer.parseInt(args[0]) : 1;
+    for (MiningEngine engine : MiningEngine.values()) {
+      if (!engine.isAvailable()) {
+        pen.printf("%-8s not available%n", engine);
+        continue;
+      } // if
+      Miner miner = new Miner(workers, engine);
+      rate(miner, WARMUP);
+      pen.printf("%-8s %,.0f hashes/s with %d worker(s)%n", engine, rate(miner, MEASURE),
+          workers);
+      miner.shutdown();
+    } // for
+  } // main(String[])
+} // class MiningBenchmark
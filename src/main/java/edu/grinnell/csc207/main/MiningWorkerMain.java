@@ -0,0 +1,36 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.LeadingZeroBitsValidator;
+import edu.grinnell.csc207.blockchains.MiningWorker;
+
+import java.io.PrintWriter;
+
+/**
+ * Run a mining worker that connects to a MiningCoordinator.
+ *
+ * @author Mina Bakrac
+ */
+public class MiningWorkerMain {
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Run the worker.
+   *
+   * @param args The coordinator's host and port, and the number of
+   *   leading zero bits a valid hash needs (by default, the UI's).
+   */
+  public static void main(String[] args) throws Exception {
+    PrintWriter pen = new PrintWriter(System.err, true);
+    if (args.length < 2 || args.length > 3) {
+      pen.println("Usage: MiningWorkerMain host port [zero-bits]");
+      System.exit(1);
+    } // if
+    int bits = (args.length == 3)
+        ? Integer.parseInt(args[2])
+        : BlockChainUI.VALIDATOR_BYTES * Byte.SIZE;
+    new MiningWorker(args[0], Integer.parseInt(args[1]), new LeadingZeroBitsValidator(bits))
+        .work();
+  } // main(String[])
+} // class MiningWorkerMain
@@ -1,12 +1,16 @@
 package edu.grinnell.csc207.blockchains;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -78,9 +82,13 @@ public class TestBlock {
    * @return the expected hash of that block.
    */
   static byte[] expectedHash(Block block) {
+    byte[] source = block.getTransaction().getSource().getBytes(StandardCharsets.UTF_8);
+    byte[] target = block.getTransaction().getTarget().getBytes(StandardCharsets.UTF_8);
     md.update(intToBytes(block.getNum()));
-    md.update(block.getTransaction().getSource().getBytes());
-    md.update(block.getTransaction().getTarget().getBytes());
+    md.update(intToBytes(source.length));
+    md.update(source);
+    md.update(intToBytes(target.length));
+    md.update(target);
     md.update(intToBytes(block.getTransaction().getAmount()));
     md.update(block.getPrevHash().getBytes());
     md.update(longToBytes(block.getNonce()));
@@ -228,6 +236,23 @@ public class TestBlock {
         "correct hash in validated block");
   } // validatedHashTest()
 
+  /**
+   * Ensure that a hasher reused across nonces gives the same hashes as
+   * freshly built blocks.
+   */
+  @Test
+  public void reusedHasherTest() {
+    Transaction t = new Transaction("Rebel", "Sky", 250);
+    Hash ph = new Hash(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    BlockHasher hasher = new BlockHasher(9, t, ph);
+    byte[] out = new byte[BlockHasher.HASH_BYTES];
+    for (long nonce = -3; nonce < 300; nonce += 7) {
+      hasher.hash(nonce, out);
+      assertArrayEquals(expectedHash(new Block(9, t, ph, nonce)), out,
+          "hash for nonce " + nonce);
+    } // for
+  } // reusedHasherTest()
+
   /**
    * Ensure that we can create the standard initial block.
    */
@@ -259,4 +284,67 @@ public class TestBlock {
   public void toStringDepositTest() {
   } // toStringDepositTest()
 
+  /**
+   * A block with several transactions hashes the root of their Merkle
+   * tree, with the odd leaf promoted.
+   */
+  @Test
+  public void multiTransactionTest() {
+    List<Transaction> ts = List.of(new Transaction("", "A", 10),
+        new Transaction("A", "B", 4), new Transaction("B", "C", 1));
+    Hash ph = new Hash(new byte[] {9, 9});
+    Block b = new Block(4, ts, ph, (h) -> h.get(0) == 0);
+
+    assertEquals(ts, b.getTransactions(), "transactions in block");
+    assertEquals(ts.get(0), b.getTransaction(), "first transaction in block");
+    Hash root = node(node(leaf(ts.get(0)), leaf(ts.get(1))), leaf(ts.get(2)));
+    assertEquals(root, b.getMerkleRoot(), "Merkle root");
+    md.update(intToBytes(4));
+    md.update(intToBytes(-1));
+    md.update(root.getBytes());
+    md.update(ph.getBytes());
+    md.update(longToBytes(b.getNonce()));
+    assertArrayEquals(md.digest(), b.getHash().getBytes(), "hash covers the root");
+    assertEquals(b.getHash(), new Block(4, ts, ph, b.getNonce()).getHash(),
+        "rebuilt block has the same hash");
+    assertNotEquals(b.getHash(), new Block(4, List.of(ts.get(1), ts.get(0), ts.get(2)), ph,
+        b.getNonce()).getHash(), "order matters");
+    assertEquals(new Block(4, ts.get(0), ph, 17).getHash(),
+        new Block(4, List.of(ts.get(0)), ph, 17).getHash(),
+        "a list of one transaction hashes like the transaction");
+    assertEquals(leaf(ts.get(0)), new Block(4, ts.get(0), ph, 17).getMerkleRoot(),
+        "root of one transaction, computed on demand");
+    assertThrows(IllegalArgumentException.class, () -> new Block(4, List.of(), ph, 0));
+  } // multiTransactionTest()
+
+  /**
+   * Compute a Merkle leaf by hand.
+   *
+   * @param t
+   *   The transaction.
+   *
+   * @return the leaf.
+   */
+  static Hash leaf(Transaction t) {
+    md.update((byte) 0);
+    md.update(t.getEncoded());
+    return new Hash(md.digest());
+  } // leaf(Transaction)
+
+  /**
+   * Compute a Merkle node by hand.
+   *
+   * @param left
+   *   The left child.
+   * @param right
+   *   The right child.
+   *
+   * @return the node.
+   */
+  static Hash node(Hash left, Hash right) {
+    md.update((byte) 1);
+    md.update(left.getBytes());
+    md.update(right.getBytes());
+    return new Hash(md.digest());
+  } // node(Hash, Hash)
 } // class TestBlock
@@ -1,6 +1,21 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 
@@ -11,4 +26,407 @@ import org.junit.jupiter.api.Test;
  * @author Samuel A. Rebelsky
  */
 public class TestBlockChain {
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * A validator that requires the first byte to be zero.
+   */
+  static final HashValidator ONE_ZERO = (h) -> (h.length() > 0) && (h.get(0) == 0);
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Batch mining appends every transaction, in order.
+   */
+  @Test
+  public void mineAllTest() throws Exception {
+    try (BlockChain chain = new BlockChain(ONE_ZERO, 2)) {
+      List<Transaction> batch = List.of(new Transaction("", "A", 10),
+          new Transaction("A", "B", 3), new Transaction("B", "C", 1));
+      BatchReport report = chain.mineAll(batch);
+      assertEquals(4, chain.getSize(), "size after batch");
+      assertEquals(3, report.getBlocks().size(), "blocks in report");
+      assertTrue(report.getAttempts() >= 3, "at least one attempt per block");
+      for (int i = 0; i < batch.size(); i++) {
+        assertEquals(batch.get(i), report.getBlocks().get(i).getTransaction(),
+            "transaction " + i);
+        assertEquals(i + 1, report.getBlocks().get(i).getNum(), "number of block " + i);
+      } // for
+      assertArrayEquals(report.getBlocks().get(2).getHash().getBytes(),
+          chain.getHash().getBytes(), "last block is the tip");
+      chain.check();
+    } // try
+  } // mineAllTest()
+
+  /**
+   * Batch mining works from a stream and on a chain without a miner.
+   */
+  @Test
+  public void mineAllStreamTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    BatchReport report = chain.mineAll(
+        IntStream.range(0, 5).mapToObj((i) -> new Transaction("", "U" + i, i)));
+    assertEquals(5, report.getBlocks().size(), "blocks mined from a stream");
+    assertEquals(6, chain.getSize(), "size after streamed batch");
+    chain.check();
+  } // mineAllStreamTest()
+
+  /**
+   * Blocks can be found by hash, and stop being found once removed.
+   */
+  @Test
+  public void byHashTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    Hash genesis = chain.getHash();
+    chain.mineAll(IntStream.range(0, 40).mapToObj((i) -> new Transaction("", "U" + i, i)));
+    List<Block> blocks = new ArrayList<>();
+    chain.blocks().forEachRemaining(blocks::add);
+    for (Block blk : blocks) {
+      assertSame(blk, chain.getBlockByHash(blk.getHash()), "block " + blk.getNum());
+      assertTrue(chain.contains(Hash.fromHex(blk.getHash().toString())),
+          "contains an equal hash of block " + blk.getNum());
+    } // for
+    assertFalse(chain.contains(new Hash(new byte[] {1, 2, 3})), "unknown hash");
+    assertNull(chain.getBlockByHash(new Hash(new byte[32])), "unknown full-size hash");
+
+    for (int i = blocks.size() - 1; i > 10; i--) {
+      assertTrue(chain.removeLast(), "remove block " + i);
+      assertFalse(chain.contains(blocks.get(i).getHash()), "removed block " + i);
+    } // for
+    for (int i = 0; i <= 10; i++) {
+      assertSame(blocks.get(i), chain.getBlockByHash(blocks.get(i).getHash()),
+          "kept block " + i);
+    } // for
+    assertEquals(0, chain.getBlockByHash(genesis).getNum(), "genesis block");
+    chain.append(blocks.get(11));
+    assertTrue(chain.contains(blocks.get(11).getHash()), "re-appended block");
+  } // byHashTest()
+
+  /**
+   * Blocks can be fetched by number, and removing and re-appending
+   * across the end of a chunk of the store keeps every block in place.
+   */
+  @Test
+  public void byNumberTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    int count = BlockStore.CHUNK_SIZE + 4;
+    chain.mineAll(IntStream.range(1, count).mapToObj((i) -> new Transaction("", "U", i)));
+    assertEquals(count, chain.getSize(), "size after mining");
+    List<Block> blocks = new ArrayList<>();
+    chain.blocks().forEachRemaining(blocks::add);
+    for (int i = 0; i < count; i++) {
+      assertSame(blocks.get(i), chain.getBlock(i), "block " + i);
+    } // for
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.getBlock(count));
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.getBlock(-1));
+
+    for (int i = count - 1; i >= BlockStore.CHUNK_SIZE - 2; i--) {
+      assertTrue(chain.removeLast(), "remove block " + i);
+    } // for
+    assertEquals(BlockStore.CHUNK_SIZE - 2, chain.getSize(), "size after removing");
+    assertThrows(IndexOutOfBoundsException.class,
+        () -> chain.getBlock(BlockStore.CHUNK_SIZE - 2));
+    for (int i = BlockStore.CHUNK_SIZE - 2; i < count; i++) {
+      chain.append(blocks.get(i));
+    } // for
+    assertSame(blocks.get(count - 1), chain.getBlock(count - 1), "last block re-appended");
+    assertEquals(blocks.get(count - 1).getHash(), chain.getHash(), "hash of the chain");
+    chain.check();
+  } // byNumberTest()
+
+  /**
+   * Iteration, balances, and users cover every transaction in blocks
+   * with several.
+   */
+  @Test
+  public void multiTransactionTest() throws Exception {
+    try (BlockChain chain = new BlockChain(ONE_ZERO, 2)) {
+      List<Transaction> first = List.of(new Transaction("", "Ann", 50),
+          new Transaction("", "Bob", 20), new Transaction("Ann", "Cat", 5));
+      chain.append(chain.mine(first));
+      chain.append(chain.mine(new Transaction("Bob", "Ann", 7)));
+      chain.append(chain.mineAsync(List.of(new Transaction("Cat", "Bob", 1),
+          new Transaction("Ann", "Bob", 2)), null, null, null).get());
+      chain.check();
+
+      List<Transaction> all = new ArrayList<>();
+      chain.forEach(all::add);
+      assertEquals(7, all.size(), "genesis plus six transactions");
+      assertEquals(first, all.subList(1, 4), "first block's transactions in order");
+      assertEquals(50 - 5 + 7 - 2, chain.balance("Ann"), "Ann's balance");
+      assertEquals(20 - 7 + 1 + 2, chain.balance("Bob"), "Bob's balance");
+      assertEquals(5 - 1, chain.balance("Cat"), "Cat's balance");
+      List<String> users = new ArrayList<>();
+      chain.users().forEachRemaining(users::add);
+      assertEquals(List.of("Ann", "Bob", "Cat"), users, "each user once");
+    } // try
+  } // multiTransactionTest()
+
+  /**
+   * Balances follow appends and removals, and do not overflow.
+   */
+  @Test
+  public void ledgerTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    chain.append(chain.mine(List.of(new Transaction("", "Big", Integer.MAX_VALUE),
+        new Transaction("", "Big", Integer.MAX_VALUE))));
+    chain.append(chain.mine(new Transaction("Big", "Small", 10)));
+    chain.append(chain.mine(new Transaction("Small", "Small", 3)));
+    assertEquals(2L * Integer.MAX_VALUE - 10, chain.balance("Big"), "Big's balance");
+    assertEquals(13, chain.balance("Small"), "Small's balance");
+    assertEquals(0, chain.balance("Nobody at all"), "unknown user's balance");
+    assertArrayEquals(new long[] {13, 0, 2L * Integer.MAX_VALUE - 10},
+        chain.balances(List.of("Small", "Nobody at all", "Big")), "several balances");
+
+    assertTrue(chain.removeLast(), "remove the self-transfer");
+    assertTrue(chain.removeLast(), "remove the transfer");
+    assertEquals(2L * Integer.MAX_VALUE, chain.balance("Big"), "Big's balance after removal");
+    assertEquals(0, chain.balance("Small"), "Small's balance after removal");
+  } // ledgerTest()
+
+  /**
+   * The directory of users and each user's history follow appends and
+   * removals.
+   */
+  @Test
+  public void historyTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    Transaction deposit = new Transaction("", "Dee", 30);
+    Transaction pay = new Transaction("Dee", "Eve", 4);
+    Transaction refund = new Transaction("Eve", "Dee", 1);
+    Transaction other = new Transaction("", "Fay", 9);
+    chain.append(chain.mine(deposit));
+    chain.append(chain.mine(other));
+    chain.append(chain.mine(List.of(pay, refund)));
+    chain.append(chain.mine(new Transaction("Dee", "Gus", 2)));
+
+    List<String> users = new ArrayList<>();
+    chain.users().forEachRemaining(users::add);
+    assertEquals(List.of("Dee", "Fay", "Eve", "Gus"), users, "users in order");
+    assertEquals(4, chain.getUserCount(), "number of users");
+    assertArrayEquals(new int[] {1, 3, 4}, chain.blocksOf("Dee"), "Dee's blocks");
+    assertArrayEquals(new int[0], chain.blocksOf("Nobody at all"), "unknown user's blocks");
+    assertEquals(List.of(pay, refund), chain.history("Eve"), "Eve's history");
+    assertEquals(4, chain.history("Dee").size(), "Dee's history");
+    assertEquals(List.of(pay, refund), chain.history("Dee", 1, 2), "a page of Dee's history");
+    assertEquals(List.of(), chain.history("Dee", 4, 2), "a page past the end");
+    assertThrows(IllegalArgumentException.class, () -> chain.history("Dee", -1, 2));
+
+    assertTrue(chain.removeLast(), "remove Gus's block");
+    assertTrue(chain.removeLast(), "remove Eve's block");
+    users.clear();
+    chain.users().forEachRemaining(users::add);
+    assertEquals(List.of("Dee", "Fay"), users, "users after removal");
+    assertArrayEquals(new int[] {1}, chain.blocksOf("Dee"), "Dee's blocks after removal");
+    assertEquals(List.of(), chain.history("Eve"), "Eve's history after removal");
+    chain.append(chain.mine(new Transaction("Fay", "Eve", 3)));
+    assertArrayEquals(new int[] {2, 3}, chain.blocksOf("Fay"), "Fay's blocks");
+    assertEquals(3, chain.getUserCount(), "Eve is back");
+  } // historyTest()
+
+  /**
+   * Each chain numbers its own users, and looking a user up does not
+   * add them.
+   */
+  @Test
+  public void userTableTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    Block blk = chain.mine(List.of(new Transaction("", "Hal", 5),
+        new Transaction("Hal", "Ida", 2)));
+    UserTable table = new UserTable();
+    UserTable other = new UserTable();
+    assertEquals(UserTable.NOBODY, table.idOf(""), "the empty name");
+    assertArrayEquals(new int[] {0, 1, 1, 2}, table.intern(blk), "new ids");
+    assertArrayEquals(new int[] {0, 1, 1, 2}, table.idsOf(blk), "known ids");
+    assertEquals("Ida", table.name(2), "name by id");
+    assertEquals(UserTable.UNKNOWN, table.idOf("Nobody at all"), "unknown user");
+    assertEquals(3, table.size(), "lookups do not add users");
+    assertEquals(UserTable.UNKNOWN, other.idOf("Hal"), "another table");
+    assertThrows(IllegalStateException.class, () -> other.idsOf(blk));
+    assertEquals(1, other.size(), "failed lookups do not add users");
+  } // userTableTest()
+
+  /**
+   * Checks only cover blocks added since the last check, and removing
+   * blocks lowers the watermark.
+   */
+  @Test
+  public void watermarkTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    assertEquals(1, chain.getVerifiedSize(), "genesis block needs no check");
+    chain.mineAll(IntStream.range(1, 6).mapToObj((i) -> new Transaction("", "W", i)));
+    assertEquals(1, chain.getVerifiedSize(), "appending does not check");
+    chain.check();
+    assertEquals(6, chain.getVerifiedSize(), "checked every block");
+    chain.append(chain.mine(new Transaction("", "W", 6)));
+    assertTrue(chain.isCorrect(), "new block is correct");
+    assertEquals(7, chain.getVerifiedSize(), "checked the new block");
+
+    assertTrue(chain.removeLast(), "remove a block");
+    assertTrue(chain.removeLast(), "remove another block");
+    assertEquals(5, chain.getVerifiedSize(), "watermark follows removals");
+    chain.append(chain.mine(new Transaction("", "W", 7)));
+    assertEquals(5, chain.getVerifiedSize(), "replacement block not yet checked");
+    chain.check(true);
+    assertEquals(6, chain.getVerifiedSize(), "full check");
+  } // watermarkTest()
+
+  /**
+   * A deep audit passes a good chain and finds the first block that does
+   * not belong where it is, even when the ordinary check passes.
+   */
+  @Test
+  public void auditTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    int count = 3 * BlockAudit.BLOCKS_PER_TASK;
+    chain.mineAll(IntStream.range(1, count).mapToObj((i) -> new Transaction("", "A", i)));
+    assertEquals(-1, chain.audit(), "good chain");
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      assertEquals(-1, chain.audit(pool), "good chain on our own pool");
+    } finally {
+      pool.shutdown();
+    } // try/finally
+    assertEquals(count, chain.getVerifiedSize(), "audit verifies the chain");
+
+    // A block numbered for another place still links and validates.
+    chain.append(new Block(count + 5, new Transaction("", "B", 1), chain.getHash(), ONE_ZERO));
+    chain.append(chain.mine(new Transaction("", "C", 2)));
+    assertTrue(chain.isCorrect(), "ordinary check misses the misplaced block");
+    assertEquals(count, chain.audit(), "audit finds the misplaced block");
+    assertEquals(count, chain.getVerifiedSize(), "watermark stops at the bad block");
+    assertTrue(chain.removeLast(), "remove the good block");
+    assertTrue(chain.removeLast(), "remove the bad block");
+    assertEquals(-1, chain.audit(), "good again");
+  } // auditTest()
+
+  /**
+   * Readers see whole snapshots and consistent balances while another
+   * thread appends and removes blocks.
+   */
+  @Test
+  public void concurrentReadTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    AtomicBoolean done = new AtomicBoolean(false);
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    AtomicInteger reads = new AtomicInteger();
+    Runnable reader = () -> {
+      try {
+        while (!done.get()) {
+          ChainSnapshot snap = chain.snapshot();
+          int transactions = 0;
+          for (int n = 0; n < snap.getSize(); n++) {
+            Block blk = snap.getBlock(n);
+            assertEquals(n, blk.getNum(), "number of block " + n);
+            if (n > 0) {
+              assertEquals(snap.getBlock(n - 1).getHash(), blk.getPrevHash(), "link " + n);
+            } // if
+            transactions += blk.getTransactions().size();
+          } // for
+          assertEquals(snap.getLast().getHash(), snap.getHash(), "tip of the snapshot");
+          int iterated = 0;
+          for (Transaction t : snap) {
+            iterated++;
+          } // for
+          assertEquals(transactions, iterated, "transactions in the snapshot");
+          // Every block pays P two and P pays Q one, so they always match.
+          long[] pq = chain.balances(List.of("P", "Q"));
+          assertEquals(pq[0], pq[1], "balances from the same block");
+          reads.incrementAndGet();
+        } // while
+      } catch (Throwable e) {
+        failure.compareAndSet(null, e);
+      } // try/catch
+    };
+    List<Thread> readers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread t = new Thread(reader, "reader");
+      readers.add(t);
+      t.start();
+    } // for
+    try {
+      for (int k = 1; k <= 400; k++) {
+        chain.append(chain.mine(List.of(new Transaction("", "P", 2),
+            new Transaction("P", "Q", 1))));
+        if (k % 3 == 0) {
+          assertTrue(chain.removeLast(), "remove block");
+        } // if
+      } // for
+    } finally {
+      done.set(true);
+      for (Thread t : readers) {
+        t.join();
+      } // for
+    } // try/finally
+    assertNull(failure.get(), () -> "reader failed: " + failure.get());
+    assertTrue(reads.get() > 0, "readers read");
+    assertEquals(400 - 400 / 3 + 1, chain.getSize(), "size at the end");
+    assertEquals(400 - 400 / 3, chain.balance("Q"), "Q's balance at the end");
+    assertEquals(-1, chain.audit(), "chain at the end");
+
+    // A snapshot keeps its blocks after they are removed and replaced.
+    ChainSnapshot before = chain.snapshot();
+    Block last = before.getLast();
+    assertTrue(chain.removeLast(), "remove the last block");
+    chain.append(chain.mine(new Transaction("", "R", 3)));
+    assertSame(last, before.getLast(), "old snapshot keeps its block");
+    assertNotSame(last, chain.snapshot().getLast(), "new snapshot sees the new block");
+  } // concurrentReadTest()
+
+  /**
+   * Balances as of any block match a replay of the chain up to it, for
+   * any checkpoint interval, as blocks come and go.
+   */
+  @Test
+  public void balanceAtTest() throws Exception {
+    BlockChain chain = new BlockChain(ONE_ZERO);
+    chain.setCheckpointInterval(4);
+    assertEquals(4, chain.getCheckpointInterval(), "interval");
+    String[] names = {"Hal", "Ida", "Jo"};
+    for (int k = 1; k < 23; k++) {
+      String to = names[k % 3];
+      String from = (k % 4 == 0) ? "" : names[(k + 1) % 3];
+      chain.append(chain.mine(new Transaction(from, to, k)));
+    } // for
+    // Remove blocks back past the checkpoint at block 20.
+    for (int k = 0; k < 3; k++) {
+      assertTrue(chain.removeLast(), "remove block " + (22 - k));
+    } // for
+    chain.append(chain.mine(new Transaction("", "Ida", 100)));
+    chain.append(chain.mine(new Transaction("Ida", "Jo", 7)));
+
+    // The first pass uses the checkpoints taken as the chain grew.
+    for (int interval : new int[] {4, 1, 5, 1000}) {
+      if (interval != chain.getCheckpointInterval()) {
+        chain.setCheckpointInterval(interval);
+      } // if
+      List<Block> blocks = new ArrayList<>();
+      chain.blocks().forEachRemaining(blocks::add);
+      long[] expected = new long[names.length];
+      for (int height = 0; height < blocks.size(); height++) {
+        for (Transaction t : blocks.get(height).getTransactions()) {
+          for (int i = 0; i < names.length; i++) {
+            if (t.getTarget().equals(names[i])) {
+              expected[i] += t.getAmount();
+            } else if (t.getSource().equals(names[i])) {
+              expected[i] -= t.getAmount();
+            } // if/else
+          } // for
+        } // for
+        assertArrayEquals(expected, chain.balancesAt(List.of(names), height),
+            "balances at " + height + " every " + interval);
+        assertEquals(expected[1], chain.balanceAt("Ida", height), "Ida at " + height);
+      } // for
+      assertArrayEquals(expected, chain.balances(List.of(names)), "balances at the tip");
+    } // for
+    assertEquals(0, chain.balanceAt("Nobody at all", 3), "unknown user");
+    assertThrows(IndexOutOfBoundsException.class,
+        () -> chain.balanceAt("Hal", chain.getSize()));
+    assertThrows(IndexOutOfBoundsException.class, () -> chain.balanceAt("Hal", -1));
+    assertThrows(IllegalArgumentException.class, () -> chain.setCheckpointInterval(0));
+  } // balanceAtTest()
 } // class TestBlockChain
@@ -1,10 +1,15 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 
@@ -106,5 +111,120 @@ public class TestHash {
     assertFalse(h.equals(new Hash(bytes)), 
        "a hash does not equal a hash made from its modified bytes");
   } // testReturnBytes
-  
+
+  /**
+   * Full-size hashes (stored as words) behave like any other hash.
+   */
+  @Test
+  public void testWordHashes() {
+    byte[] bytes = new byte[32];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 37 - 100);
+    } // for
+    Hash h = new Hash(bytes);
+    assertEquals(32, h.length(), "length of full-size hash");
+    for (int i = 0; i < bytes.length; i++) {
+      assertEquals(bytes[i], h.get(i), "element " + i + " of full-size hash");
+    } // for
+    assertArrayEquals(bytes, h.getBytes(), "bytes of full-size hash");
+    assertEquals(new Hash(bytes), h, "equal to a hash with the same bytes");
+    assertEquals(new Hash(bytes).hashCode(), h.hashCode(), "same hash code");
+    for (int i = 0; i < bytes.length; i++) {
+      byte[] other = bytes.clone();
+      other[i]++;
+      assertNotEquals(new Hash(other), h, "differs in element " + i);
+    } // for
+    assertNotEquals(new Hash(Arrays.copyOf(bytes, 31)), h,
+        "not equal to a shorter hash");
+  } // testWordHashes
+
+  /**
+   * Hashes write their bytes into arrays and buffers.
+   */
+  @Test
+  public void testWriteTo() {
+    byte[] bytes = new byte[32];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (255 - i);
+    } // for
+    for (Hash h : new Hash[] {new Hash(bytes), new Hash(new byte[] {1, 2, 3})}) {
+      byte[] out = new byte[h.length() + 2];
+      h.writeTo(out, 2);
+      assertArrayEquals(h.getBytes(), Arrays.copyOfRange(out, 2, out.length),
+          "write to an array");
+      for (ByteOrder order : new ByteOrder[] {
+          ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+        ByteBuffer buffer = ByteBuffer.allocate(h.length() + 1).order(order);
+        buffer.put((byte) 0);
+        h.writeTo(buffer);
+        assertEquals(buffer.capacity(), buffer.position(), "write advances the buffer");
+        assertArrayEquals(h.getBytes(),
+            Arrays.copyOfRange(buffer.array(), 1, buffer.capacity()),
+            "write to a " + order + " buffer");
+      } // for
+    } // for
+  } // testWriteTo
+
+  /**
+   * Hex strings parse back into the hashes they came from.
+   */
+  @Test
+  public void testFromHex() {
+    byte[] bytes = new byte[32];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 41 + 7);
+    } // for
+    for (Hash h : new Hash[] {new Hash(bytes), new Hash(new byte[] {0, 10, (byte) 255}),
+        new Hash(new byte[0])}) {
+      assertEquals(h, Hash.fromHex(h.toString()), "parse " + h);
+      assertEquals(h, Hash.fromHex(h.toString().toLowerCase()), "parse lowercase " + h);
+    } // for
+    assertEquals(new Hash(new byte[] {(byte) 0xAB, 0x0F}), Hash.fromHex("aB0f"), "mixed case");
+    assertThrows(IllegalArgumentException.class, () -> Hash.fromHex("ABC"));
+    assertThrows(IllegalArgumentException.class, () -> Hash.fromHex("0G"));
+    assertThrows(IllegalArgumentException.class, () -> Hash.fromHex("\u00e90"));
+  } // testFromHex
+
+  /**
+   * Hashes read back from buffers in either byte order.
+   */
+  @Test
+  public void testReadFrom() {
+    byte[] bytes = new byte[32];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 13 - 1);
+    } // for
+    for (Hash h : new Hash[] {new Hash(bytes), new Hash(new byte[] {4, 5})}) {
+      for (ByteOrder order : new ByteOrder[] {ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * h.length()).order(order);
+        h.writeTo(h.writeTo(buffer)).flip();
+        assertEquals(h, Hash.readFrom(buffer, h.length()), "first read, " + order);
+        assertEquals(h, Hash.readFrom(buffer, h.length()), "second read, " + order);
+        assertFalse(buffer.hasRemaining(), "reads consume the buffer");
+      } // for
+    } // for
+  } // testReadFrom
+
+  /**
+   * Hashes read from part of an array match hashes of a copy of that
+   * part, and do not share the array.
+   */
+  @Test
+  public void testRange() {
+    byte[] bytes = new byte[40];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 37);
+    } // for
+    for (int length : new int[] {Hash.WORDS_BYTES, 5, 0}) {
+      Hash expected = new Hash(Arrays.copyOfRange(bytes, 3, 3 + length));
+      Hash h = new Hash(bytes, 3, length);
+      assertEquals(expected, h, length + " bytes at an offset");
+      assertEquals(expected.hashCode(), h.hashCode(), "hash code of " + length + " bytes");
+      bytes[3] ^= 1;
+      assertEquals(expected, h, length + " bytes not shared");
+      bytes[3] ^= 1;
+    } // for
+    HashValidator first = (hash) -> hash.length() > 0 && hash.get(0) == bytes[3];
+    assertTrue(first.isValid(bytes, 3, Hash.WORDS_BYTES), "default validator reads the range");
+  } // testRange()
 } // class TestHash
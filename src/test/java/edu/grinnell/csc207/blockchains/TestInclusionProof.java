@@ -0,0 +1,120 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests of Merkle branches and inclusion proofs.
+ *
+ * @author Mina Bakrac
+ */
+public class TestInclusionProof {
+  /**
+   * A validator that accepts every hash, so that tests mine instantly.
+   */
+  static final HashValidator ANY = (h) -> true;
+
+  /**
+   * Make some distinct transactions.
+   *
+   * @param n The number of transactions.
+   * @return the transactions.
+   */
+  static List<Transaction> transactions(int n) {
+    List<Transaction> ts = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      ts.add(new Transaction("Payer" + i, "Payee" + i, i));
+    } // for
+    return ts;
+  } // transactions(int)
+
+  /**
+   * Every branch of trees of many sizes folds back to the root, and only
+   * with its own leaf and position.
+   */
+  @Test
+  public void branchTest() {
+    for (int n = 1; n <= 17; n++) {
+      List<Transaction> ts = transactions(n);
+      Hash root = MerkleTree.root(ts);
+      for (int i = 0; i < n; i++) {
+        List<Hash> branch = MerkleTree.branch(ts, i);
+        Hash leaf = MerkleTree.leaf(ts.get(i));
+        assertEquals(root, MerkleTree.fold(leaf, i, n, branch), n + " leaves, leaf " + i);
+        assertTrue(branch.size() <= 32 - Integer.numberOfLeadingZeros(n),
+            "branch is logarithmic");
+        if (n > 1) {
+          int other = (i + 1) % n;
+          assertFalse(root.equals(MerkleTree.fold(MerkleTree.leaf(ts.get(other)), i, n, branch)),
+              "wrong leaf");
+        } // if
+      } // for
+    } // for
+  } // branchTest()
+
+  /**
+   * Proofs for transactions in single- and multi-transaction blocks
+   * verify against the hash of their block, survive a round trip through
+   * a buffer, stay the same size as the chain grows, and fail against
+   * any other hash.
+   */
+  @Test
+  public void proofTest() {
+    BlockChain chain = new BlockChain(ANY);
+    List<Transaction> batch = transactions(5);
+    Transaction single = new Transaction("", "Solo", 99);
+    chain.append(chain.mine(single));
+    chain.append(chain.mine(batch));
+    int length = chain.prove(single).encodedLength();
+    for (int i = 0; i < 8; i++) {
+      chain.append(chain.mine(new Transaction("", "Later", i)));
+    } // for
+    assertEquals(length, chain.prove(single).encodedLength(), "size is independent of age");
+
+    List<Transaction> proven = new ArrayList<>(batch);
+    proven.add(single);
+    for (Transaction t : proven) {
+      InclusionProof proof = chain.prove(t);
+      Hash trusted = chain.getBlock(proof.getBlockNum()).getHash();
+      assertEquals(t, proof.getTransaction(), "proven transaction");
+      assertTrue(proof.verify(trusted), "proof of " + t);
+      assertFalse(proof.verify(chain.getHash()), "another block's hash");
+
+      ByteBuffer buffer = ByteBuffer.allocate(proof.encodedLength());
+      proof.writeTo(buffer).flip();
+      InclusionProof copy = InclusionProof.readFrom(buffer);
+      assertFalse(buffer.hasRemaining(), "whole proof read");
+      assertTrue(copy.verify(trusted), "copied proof of " + t);
+      assertEquals(proof.getBlockNum(), copy.getBlockNum(), "block of copied proof");
+    } // for
+    assertEquals(2, chain.prove(batch.get(3)).getBlockNum(), "block of batch");
+    assertEquals(3, chain.prove(batch.get(3)).getIndex(), "position in batch");
+    assertNull(chain.prove(new Transaction("No", "One", 0)), "absent transaction");
+  } // proofTest()
+
+  /**
+   * A proof for one transaction does not prove another.
+   */
+  @Test
+  public void forgeryTest() {
+    BlockChain chain = new BlockChain(ANY);
+    List<Transaction> batch = transactions(4);
+    chain.append(chain.mine(batch));
+    InclusionProof proof = chain.prove(batch.get(1));
+    InclusionProof forged = new InclusionProof(new Transaction("Payer1", "Thief", 1),
+        proof.getIndex(), 4, MerkleTree.branch(batch, 1),
+        chain.getBlockByHash(chain.getHash()).getPrevHash(),
+        new InclusionProof.Header(chain.getBlockByHash(chain.getHash())));
+    assertTrue(proof.verify(chain.getHash()), "real proof");
+    assertFalse(forged.verify(chain.getHash()), "forged proof");
+  } // forgeryTest()
+} // class TestInclusionProof
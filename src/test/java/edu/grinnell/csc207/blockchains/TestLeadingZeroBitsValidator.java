@@ -0,0 +1,76 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our LeadingZeroBitsValidator class.
+ *
+ * @author Bonsen Yusuf
+ */
+public class TestLeadingZeroBitsValidator {
+  /**
+   * Count the leading zero bits in some bytes, the slow way.
+   *
+   * @param bytes
+   *   The bytes to count.
+   *
+   * @return the number of leading zero bits.
+   */
+  static int leadingZeros(byte[] bytes) {
+    int count = 0;
+    for (byte b : bytes) {
+      if (b != 0) {
+        return count + Integer.numberOfLeadingZeros(b & 0xFF) - 24;
+      } // if
+      count += 8;
+    } // for
+    return count;
+  } // leadingZeros(byte[])
+
+  /**
+   * Both forms agree with a slow count for every difficulty and a
+   * variety of hashes.
+   */
+  @Test
+  public void agreesWithCountTest() {
+    for (int zeros = 0; zeros <= 96; zeros++) {
+      byte[] bytes = new byte[32];
+      bytes[zeros / 8] = (byte) (0x80 >>> (zeros % 8));
+      for (int bits = 0; bits <= 100; bits += 3) {
+        LeadingZeroBitsValidator v = new LeadingZeroBitsValidator(bits);
+        boolean expected = leadingZeros(bytes) >= bits;
+        assertEquals(expected, v.isValid(new Hash(bytes)),
+            zeros + " zeros, " + bits + " bits, Hash");
+        assertEquals(expected, v.isValid(bytes, 0, bytes.length),
+            zeros + " zeros, " + bits + " bits, bytes");
+      } // for
+    } // for
+  } // agreesWithCountTest()
+
+  /**
+   * Short hashes and offsets are handled.
+   */
+  @Test
+  public void shortHashTest() {
+    LeadingZeroBitsValidator v = new LeadingZeroBitsValidator(20);
+    assertFalse(v.isValid(new Hash(new byte[] {0, 0})), "too short");
+    assertTrue(v.isValid(new Hash(new byte[] {0, 0, 0x0F})), "exactly long enough");
+    assertTrue(v.isValid(new byte[] {5, 0, 0, 0x0F}, 1, 3), "offset bytes");
+    assertFalse(v.isValid(new byte[] {0, 0, 0, 0x1F}, 1, 3), "offset bytes, one bit short");
+  } // shortHashTest()
+
+  /**
+   * Blocks mined with the validator are valid.
+   */
+  @Test
+  public void miningTest() {
+    LeadingZeroBitsValidator v = new LeadingZeroBitsValidator(12);
+    Block b = new Block(1, new Transaction("", "Z", 1), new Hash(new byte[] {1}), v);
+    assertTrue(leadingZeros(b.getHash().getBytes()) >= 12, "mined block has 12 zero bits");
+  } // miningTest()
+} // class TestLeadingZeroBitsValidator
@@ -0,0 +1,141 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our Miner class.
+ *
+ * @author Mina Bakrac
+ */
+public class TestMiner {
+  /**
+   * A validator that requires the first two bytes to be zero.
+   */
+  static final HashValidator TWO_ZEROS =
+      (h) -> (h.length() > 1) && (h.get(0) == 0) && (h.get(1) == 0);
+
+  /**
+   * Parallel mining produces a block whose hash is valid and matches
+   * the hash computed from its contents.
+   */
+  @Test
+  public void parallelBlockTest() {
+    Miner miner = new Miner(4);
+    Transaction t = new Transaction("Here", "There", 12);
+    Hash ph = new Hash(new byte[] {3, 4, 5});
+    Block b = miner.mine(3, t, ph, TWO_ZEROS);
+
+    assertEquals(3, b.getNum(), "number of mined block");
+    assertEquals(t, b.getTransaction(), "transaction in mined block");
+    assertEquals(ph, b.getPrevHash(), "previous hash of mined block");
+    assertTrue(TWO_ZEROS.isValid(b.getHash()), "mined hash is valid");
+    assertEquals(new Block(3, t, ph, b.getNonce()).getHash(), b.getHash(),
+        "mined hash matches a block rebuilt from the nonce");
+  } // parallelBlockTest()
+
+  /**
+   * A single worker finds the same nonce as the sequential miner.
+   */
+  @Test
+  public void singleWorkerTest() {
+    Transaction t = new Transaction("", "Someone", 555);
+    Hash ph = new Hash(new byte[] {5, 5, 5});
+    HashValidator check = (h) -> h.get(0) == 0;
+    assertEquals(new Block(5, t, ph, check).getNonce(),
+        new Miner(1).findNonce(5, t, ph, check),
+        "one worker searches in order");
+  } // singleWorkerTest()
+
+  /**
+   * Blocks mined in parallel can be appended to a chain.
+   */
+  @Test
+  public void parallelChainTest() throws Exception {
+    try (BlockChain chain = new BlockChain(TWO_ZEROS, 3)) {
+      chain.append(chain.mine(new Transaction("", "Alpha", 100)));
+      chain.append(chain.mine(new Transaction("Alpha", "Beta", 40)));
+      assertEquals(3, chain.getSize(), "size after parallel appends");
+      chain.check();
+    } // try
+  } // parallelChainTest()
+
+  /**
+   * Asynchronous mining produces a block that the chain accepts.
+   */
+  @Test
+  public void asyncTest() throws Exception {
+    try (BlockChain chain = new BlockChain(TWO_ZEROS, 2)) {
+      MiningJob job = chain.mineAsync(new Transaction("", "Alpha", 100));
+      Block b = job.get(1, TimeUnit.MINUTES);
+      assertTrue(job.isDone(), "job is done");
+      assertTrue(job.getAttempts() > 0, "job made attempts");
+      chain.append(b);
+      assertEquals(2, chain.getSize(), "size after async append");
+    } // try
+  } // asyncTest()
+
+  /**
+   * Asynchronous mining can run on an executor we supply.
+   */
+  @Test
+  public void executorTest() throws Exception {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      BlockChain chain = new BlockChain(TWO_ZEROS);
+      MiningJob first = chain.mineAsync(new Transaction("", "A", 1), null, executor);
+      MiningJob second = chain.mineAsync(new Transaction("", "B", 2), null, executor);
+      chain.append(first.get(1, TimeUnit.MINUTES));
+      assertTrue(TWO_ZEROS.isValid(second.get(1, TimeUnit.MINUTES).getHash()),
+          "both jobs finish");
+    } finally {
+      executor.shutdownNow();
+    } // try/finally
+  } // executorTest()
+
+  /**
+   * A job that cannot succeed stops at its deadline.
+   */
+  @Test
+  public void deadlineTest() throws Exception {
+    MiningJob job = new Miner(2).start(1, new Transaction("", "X", 1),
+        new Hash(new byte[] {1}), (h) -> false, Duration.ofMillis(200));
+    ExecutionException e = assertThrows(ExecutionException.class,
+        () -> job.get(1, TimeUnit.MINUTES));
+    assertInstanceOf(TimeoutException.class, e.getCause(), "deadline reported");
+    assertTrue(job.getAttempts() > 0, "job made attempts before the deadline");
+  } // deadlineTest()
+
+  /**
+   * A cancelled job stops.
+   */
+  @Test
+  public void cancelTest() throws Exception {
+    MiningJob job = new Miner(2).start(1, new Transaction("", "X", 1),
+        new Hash(new byte[] {1}), (h) -> false, null);
+    assertTrue(job.cancel(), "cancel succeeds");
+    assertTrue(job.isDone(), "cancelled job is done");
+    assertThrows(CancellationException.class, () -> job.get());
+  } // cancelTest()
+
+  /**
+   * We need at least one worker.
+   */
+  @Test
+  public void noWorkersTest() {
+    assertThrows(IllegalArgumentException.class, () -> new Miner(0));
+  } // noWorkersTest()
+} // class TestMiner
@@ -0,0 +1,256 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of distributed mining with our MiningCoordinator
+ * and MiningWorker classes.
+ *
+ * @author Mina Bakrac
+ */
+public class TestMiningCoordinator {
+  /**
+   * The number of zero bits the tests mine for.
+   */
+  static final int BITS = 14;
+
+  /**
+   * Workers on threads mine consecutive blocks that the chain accepts.
+   */
+  @Test
+  public void threadWorkersTest() throws Exception {
+    HashValidator check = new LeadingZeroBitsValidator(BITS);
+    BlockChain chain = new BlockChain(check);
+    try (MiningCoordinator coord = new MiningCoordinator(0)) {
+      for (int i = 0; i < 3; i++) {
+        Thread t = new Thread(new MiningWorker("localhost", coord.getPort(), check));
+        t.setDaemon(true);
+        t.start();
+      } // for
+      assertTrue(coord.awaitWorkers(3, 10_000), "workers connected");
+      for (int i = 0; i < 3; i++) {
+        chain.append(coord.mine(chain.getSize(), new Transaction("", "W" + i, i),
+            chain.getHash(), check));
+      } // for
+    } // try
+    assertEquals(4, chain.getSize(), "size after distributed mining");
+    chain.check();
+  } // threadWorkersTest()
+
+  /**
+   * Workers in separate processes mine a block that the chain accepts.
+   */
+  @Test
+  public void processWorkersTest() throws Exception {
+    HashValidator check = new LeadingZeroBitsValidator(BITS);
+    BlockChain chain = new BlockChain(check);
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    List<Process> workers = new ArrayList<>();
+    try (MiningCoordinator coord = new MiningCoordinator(0)) {
+      for (int i = 0; i < 2; i++) {
+        workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+            "edu.grinnell.csc207.main.MiningWorkerMain", "localhost",
+            Integer.toString(coord.getPort()), Integer.toString(BITS))
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start());
+      } // for
+      assertTrue(coord.awaitWorkers(2, 30_000), "worker processes connected");
+      Block b = coord.mine(chain.getSize(), new Transaction("", "Remote", 5),
+          chain.getHash(), check);
+      chain.append(b);
+    } finally {
+      for (Process p : workers) {
+        p.destroy();
+      } // for
+    } // try/finally
+    assertEquals(2, chain.getSize(), "size after remote mining");
+    chain.check();
+  } // processWorkersTest()
+
+  /**
+   * Concurrent calls to mine each get a block with their own
+   * transaction.
+   */
+  @Test
+  public void concurrentMineTest() throws Exception {
+    HashValidator check = new LeadingZeroBitsValidator(BITS);
+    Hash prev = new Hash(new byte[0]);
+    try (MiningCoordinator coord = new MiningCoordinator(0)) {
+      for (int i = 0; i < 2; i++) {
+        Thread t = new Thread(new MiningWorker("localhost", coord.getPort(), check));
+        t.setDaemon(true);
+        t.start();
+      } // for
+      assertTrue(coord.awaitWorkers(2, 10_000), "workers connected");
+      List<CompletableFuture<Block>> blocks = new ArrayList<>();
+      for (int i = 0; i < 3; i++) {
+        Transaction t = new Transaction("", "C" + i, i);
+        blocks.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return coord.mine(1, t, prev, check, Duration.ofMinutes(1));
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          } // try/catch
+        }));
+      } // for
+      for (int i = 0; i < 3; i++) {
+        Block b = blocks.get(i).get(1, TimeUnit.MINUTES);
+        assertEquals("C" + i, b.getTransaction().getTarget(), "block " + i);
+        assertTrue(check.isValid(b.getHash()), "hash of block " + i);
+      } // for
+    } // try
+  } // concurrentMineTest()
+
+  /**
+   * A range whose worker disconnects is handed to another worker.
+   */
+  @Test
+  public void abandonedRangeTest() throws Exception {
+    try (MiningCoordinator coord = new MiningCoordinator(0);
+        Socket quitter = new Socket("localhost", coord.getPort());
+        Socket stayer = new Socket("localhost", coord.getPort())) {
+      assertTrue(coord.awaitWorkers(2, 10_000), "workers connected");
+      CompletableFuture<Block> mined = CompletableFuture.supplyAsync(() -> {
+        try {
+          return coord.mine(1, new Transaction("", "A", 1), new Hash(new byte[0]),
+              (h) -> true, Duration.ofMinutes(1));
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        } // try/catch
+      });
+      BufferedReader quitterIn = new BufferedReader(
+          new InputStreamReader(quitter.getInputStream(), StandardCharsets.US_ASCII));
+      BufferedReader stayerIn = new BufferedReader(
+          new InputStreamReader(stayer.getInputStream(), StandardCharsets.US_ASCII));
+      PrintWriter stayerOut =
+          new PrintWriter(stayer.getOutputStream(), true, StandardCharsets.US_ASCII);
+      // JOB id prefix start count
+      String[] lost = quitterIn.readLine().split(" ");
+      String[] first = stayerIn.readLine().split(" ");
+      quitter.close();
+      while (coord.getWorkerCount() > 1) {
+        Thread.sleep(10);
+      } // while
+      stayerOut.printf("DONE %s%n", first[1]);
+      String[] next = stayerIn.readLine().split(" ");
+      assertEquals(lost[3], next[3], "abandoned range handed out again");
+      stayerOut.printf("FOUND %s %s%n", next[1], next[3]);
+      assertEquals(Long.parseLong(lost[3]), mined.get(1, TimeUnit.MINUTES).getNonce(),
+          "nonce from the abandoned range");
+    } // try
+  } // abandonedRangeTest()
+
+  /**
+   * Mining fails rather than waiting forever when there are no workers,
+   * when the deadline passes, or when the last worker leaves.
+   */
+  @Test
+  public void failFastTest() throws Exception {
+    Transaction t = new Transaction("", "A", 1);
+    Hash prev = new Hash(new byte[0]);
+    HashValidator never = (h) -> false;
+    try (MiningCoordinator coord = new MiningCoordinator(0)) {
+      assertThrows(IllegalStateException.class, () -> coord.mine(1, t, prev, never),
+          "no workers");
+      try (Socket idle = new Socket("localhost", coord.getPort())) {
+        assertTrue(coord.awaitWorkers(1, 10_000), "worker connected");
+        assertThrows(IllegalStateException.class,
+            () -> coord.mine(1, t, prev, never, Duration.ofMillis(200)), "deadline");
+        CompletableFuture<Block> mined = CompletableFuture.supplyAsync(() -> {
+          try {
+            return coord.mine(1, t, prev, never);
+          } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+          } // try/catch
+        });
+        new BufferedReader(new InputStreamReader(idle.getInputStream(),
+            StandardCharsets.US_ASCII)).readLine();
+        idle.close();
+        ExecutionException e = assertThrows(ExecutionException.class,
+            () -> mined.get(1, TimeUnit.MINUTES), "last worker left");
+        assertTrue(e.getCause() instanceof IllegalStateException, "cause " + e.getCause());
+      } // try
+    } // try
+  } // failFastTest()
+
+  /**
+   * Closing the coordinator fails the block being mined, and workers get
+   * no more ranges.
+   */
+  @Test
+  public void closeTest() throws Exception {
+    MiningCoordinator coord = new MiningCoordinator(0);
+    try (Socket idle = new Socket("localhost", coord.getPort())) {
+      assertTrue(coord.awaitWorkers(1, 10_000), "worker connected");
+      CompletableFuture<Block> mined = CompletableFuture.supplyAsync(() -> {
+        try {
+          return coord.mine(1, new Transaction("", "A", 1), new Hash(new byte[0]),
+              (h) -> false);
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        } // try/catch
+      });
+      BufferedReader in = new BufferedReader(
+          new InputStreamReader(idle.getInputStream(), StandardCharsets.US_ASCII));
+      PrintWriter out = new PrintWriter(idle.getOutputStream(), true, StandardCharsets.US_ASCII);
+      String[] job = in.readLine().split(" ");
+      coord.close();
+      ExecutionException e = assertThrows(ExecutionException.class,
+          () -> mined.get(10, TimeUnit.SECONDS), "mine after close");
+      assertTrue(e.getCause() instanceof IllegalStateException, "cause " + e.getCause());
+      out.printf("DONE %s%n", job[1]);
+      String msg;
+      while ((msg = in.readLine()) != null) {
+        assertFalse(msg.startsWith("JOB"), "range after close: " + msg);
+      } // while
+    } // try
+  } // closeTest()
+
+  /**
+   * A worker told goodbye in the middle of a range leaves without
+   * reporting on the range.
+   */
+  @Test
+  public void workerByeTest() throws Exception {
+    try (ServerSocket server = new ServerSocket(0)) {
+      Thread worker = new Thread(new MiningWorker("localhost", server.getLocalPort(),
+          (h) -> false));
+      worker.setDaemon(true);
+      worker.start();
+      try (Socket socket = server.accept()) {
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+        PrintWriter out =
+            new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+        String prefix = new Hash(BlockHasher.prefix(1, new Transaction("", "A", 1),
+            new Hash(new byte[0]))).toString();
+        out.printf("JOB 1 %s 0 %d%n", prefix, Long.MAX_VALUE);
+        out.println("BYE");
+        worker.join(60_000);
+        assertFalse(worker.isAlive(), "worker left");
+        assertNull(in.readLine(), "no DONE after BYE");
+      } // try
+    } // try
+  } // workerByeTest()
+} // class TestMiningCoordinator
@@ -0,0 +1,102 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+/**
+ * Some simple tests of resumable mining with our NonceCheckpoint class.
+ *
+ * @author Mina Bakrac
+ */
+public class TestNonceCheckpoint {
+  /**
+   * A directory for checkpoint files.
+   */
+  @TempDir
+  Path dir;
+
+  /**
+   * Saved progress is only loaded for the same block.
+   */
+  @Test
+  public void saveLoadTest() throws Exception {
+    NonceCheckpoint cp = new NonceCheckpoint(dir.resolve("cp"));
+    Transaction t = new Transaction("A", "B", 3);
+    Hash ph = new Hash(new byte[] {1, 2});
+    String key = NonceCheckpoint.key(4, t, ph);
+    assertEquals(0, cp.load(key), "no file yet");
+    cp.save(key, 123_456);
+    assertEquals(123_456, cp.load(key), "same block resumes");
+    assertEquals(0, cp.load(NonceCheckpoint.key(5, t, ph)), "different number");
+    assertEquals(0, cp.load(NonceCheckpoint.key(4, new Transaction("A", "B", 4), ph)),
+        "different transaction");
+    cp.clear();
+    assertFalse(Files.exists(cp.getFile()), "cleared");
+    cp.clear();
+  } // saveLoadTest()
+
+  /**
+   * A job that times out records its progress, and a later job for the
+   * same block starts from there and clears the checkpoint once it finds
+   * a nonce.
+   */
+  @Test
+  public void resumeTest() throws Exception {
+    NonceCheckpoint cp = new NonceCheckpoint(dir.resolve("cp"));
+    Miner miner = new Miner(2);
+    Transaction t = new Transaction("", "Patient", 7);
+    Hash ph = new Hash(new byte[] {9});
+
+    MiningJob first = miner.start(1, t, ph, (h) -> false, Duration.ofMillis(300), cp);
+    assertThrows(ExecutionException.class, () -> first.get(1, TimeUnit.MINUTES));
+    long searched = first.getSearchedBelow();
+    assertTrue(searched > 0, "first job made progress");
+    assertEquals(searched, cp.load(NonceCheckpoint.key(1, t, ph)), "progress saved");
+
+    MiningJob second = miner.start(1, t, ph, (h) -> true, null, cp);
+    Block b = second.get(1, TimeUnit.MINUTES);
+    assertTrue(b.getNonce() >= searched, "second job resumed past the saved progress");
+    assertFalse(Files.exists(cp.getFile()), "checkpoint cleared after mining");
+  } // resumeTest()
+
+  /**
+   * A cancelled job records its progress, and a job resumes from the
+   * chunk holding the saved nonce.
+   */
+  @Test
+  public void cancelTest() throws Exception {
+    NonceCheckpoint cp = new NonceCheckpoint(dir.resolve("cp"));
+    Miner miner = new Miner(2);
+    Transaction t = new Transaction("", "Impatient", 8);
+    Hash ph = new Hash(new byte[] {7});
+    String key = NonceCheckpoint.key(1, t, ph);
+
+    MiningJob first = miner.start(1, t, ph, (h) -> false, null, cp);
+    while (first.getSearchedBelow() == 0) {
+      Thread.sleep(10);
+    } // while
+    assertTrue(first.cancel(), "cancelled");
+    long deadline = System.currentTimeMillis() + 60_000;
+    while (cp.load(key) == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    } // while
+    assertTrue(cp.load(key) > 0, "progress saved after cancel");
+
+    cp.save(key, MiningJob.CHUNK_SIZE + 5);
+    Block b = miner.start(1, t, ph, (h) -> true, null, cp).get(1, TimeUnit.MINUTES);
+    assertEquals(0, b.getNonce() % MiningJob.CHUNK_SIZE, "resumed on a chunk boundary");
+    assertTrue(b.getNonce() >= MiningJob.CHUNK_SIZE, "resumed past the saved chunk");
+  } // cancelTest()
+} // class TestNonceCheckpoint
@@ -0,0 +1,81 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Cross-checks of our mining SHA-256 engine against MessageDigest.
+ *
+ * @author Mina Bakrac
+ */
+public class TestSha256 {
+  /**
+   * Some nonces to try, including ones that exercise every byte.
+   */
+  static final long[] NONCES = {
+    0, 1, 255, 256, 65_537, -1, Long.MIN_VALUE, Long.MAX_VALUE, 0x0123456789ABCDEFL
+  };
+
+  /**
+   * Hash a prefix and nonce with MessageDigest.
+   *
+   * @param prefix
+   *   The bytes before the nonce.
+   * @param nonce
+   *   The nonce.
+   *
+   * @return the SHA-256 hash of prefix followed by nonce.
+   */
+  static byte[] expected(byte[] prefix, long nonce) throws NoSuchAlgorithmException {
+    MessageDigest md = MessageDigest.getInstance("SHA-256");
+    md.update(prefix);
+    md.update(ByteBuffer.allocate(Long.BYTES).putLong(nonce).array());
+    return md.digest();
+  } // expected(byte[], long)
+
+  /**
+   * Every prefix length, so the nonce lands at every offset in the
+   * final block(s) and crosses block boundaries.
+   */
+  @Test
+  public void allOffsetsTest() throws Exception {
+    byte[] out = new byte[BlockHasher.HASH_BYTES];
+    for (int len = 0; len < 3 * Sha256.BLOCK_BYTES; len++) {
+      byte[] prefix = new byte[len];
+      for (int i = 0; i < len; i++) {
+        prefix[i] = (byte) (i * 31 + len);
+      } // for
+      Sha256 engine = new Sha256(prefix);
+      int offset = len % Sha256.BLOCK_BYTES;
+      assertEquals(offset >= 48 && offset <= 56, engine.fixedSchedule() != null,
+          "padding-only block precomputed for prefix length " + len);
+      for (long nonce : NONCES) {
+        engine.hash(nonce, out);
+        assertArrayEquals(expected(prefix, nonce), out,
+            "prefix length " + len + ", nonce " + nonce);
+      } // for
+    } // for
+  } // allOffsetsTest()
+
+  /**
+   * Reusing one engine for consecutive nonces gives the right hashes.
+   */
+  @Test
+  public void consecutiveNoncesTest() throws Exception {
+    byte[] prefix = "a block prefix that is long enough to span blocks".getBytes();
+    Sha256 engine = new Sha256(prefix);
+    byte[] out = new byte[BlockHasher.HASH_BYTES];
+    for (long nonce = 0; nonce < 1000; nonce++) {
+      engine.hash(nonce, out);
+      assertArrayEquals(expected(prefix, nonce), out, "nonce " + nonce);
+    } // for
+  } // consecutiveNoncesTest()
+} // class TestSha256
@@ -0,0 +1,142 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our TargetValidator and Retargeter classes.
+ *
+ * @author Bonsen Yusuf
+ */
+public class TestTargetValidator {
+  /**
+   * Build a 32-byte hash from a number.
+   *
+   * @param n
+   *   The number, between 0 and 2^256 - 1.
+   *
+   * @return the hash.
+   */
+  static byte[] bytesOf(BigInteger n) {
+    byte[] raw = n.toByteArray();
+    byte[] bytes = new byte[32];
+    int len = Math.min(raw.length, 32);
+    System.arraycopy(raw, raw.length - len, bytes, 32 - len, len);
+    return bytes;
+  } // bytesOf(BigInteger)
+
+  /**
+   * Hashes at, just below, and just above the target.
+   */
+  @Test
+  public void boundaryTest() {
+    BigInteger target =
+        new BigInteger("FFF123456789ABCDEF0123456789ABCDEF0123456789ABCDEF01234567", 16);
+    TargetValidator v = new TargetValidator(target);
+    assertTrue(v.isValid(new Hash(bytesOf(target))), "target itself is valid");
+    assertTrue(v.isValid(new Hash(bytesOf(target.subtract(BigInteger.ONE)))), "just below");
+    assertFalse(v.isValid(new Hash(bytesOf(target.add(BigInteger.ONE)))), "just above");
+    assertFalse(v.isValid(new Hash(bytesOf(target.shiftLeft(1)))), "far above");
+    assertTrue(v.isValid(new Hash(new byte[32])), "zero is valid");
+    assertFalse(v.isValid(new Hash(new byte[31])), "short hashes are not");
+    byte[] longer = Arrays.copyOf(bytesOf(target), 40);
+    assertTrue(v.isValid(new Hash(longer)), "longer hash at the target");
+    longer[31]++;
+    assertFalse(v.isValid(new Hash(longer)), "longer hash just above");
+  } // boundaryTest()
+
+  /**
+   * A zero-bit target agrees with the leading-zero validator.
+   */
+  @Test
+  public void zeroBitsTest() {
+    TargetValidator t = TargetValidator.fromLeadingZeroBits(10);
+    LeadingZeroBitsValidator z = new LeadingZeroBitsValidator(10);
+    for (int i = 0; i < 1000; i++) {
+      byte[] bytes = bytesOf(BigInteger.valueOf(i * 7919L).shiftLeft(236));
+      assertEquals(z.isValid(new Hash(bytes)), t.isValid(new Hash(bytes)), "hash " + i);
+    } // for
+  } // zeroBitsTest()
+
+  /**
+   * Fast blocks make the target harder; slow blocks relax it, but
+   * never past the floor.
+   */
+  @Test
+  public void retargetTest() {
+    TargetValidator floor = TargetValidator.fromLeadingZeroBits(8);
+    Retargeter r = new Retargeter(floor, Duration.ofSeconds(1), 2);
+    r.record(0, Duration.ofMillis(250).toNanos());
+    assertEquals(floor, r.current(), "no change mid-window");
+    r.record(1, Duration.ofMillis(250).toNanos());
+    assertEquals(floor.getTarget().shiftRight(2), r.current().getTarget(),
+        "four times too fast gives a quarter of the target");
+    for (int i = 0; i < 4; i++) {
+      r.record(2 + i, Duration.ofSeconds(100).toNanos());
+    } // for
+    assertEquals(floor.getTarget(), r.current().getTarget(), "slow blocks stop at the floor");
+  } // retargetTest()
+
+  /**
+   * A retargeting chain mines blocks that it accepts.
+   */
+  @Test
+  public void retargetingChainTest() throws Exception {
+    Retargeter r = new Retargeter(TargetValidator.fromLeadingZeroBits(4),
+        Duration.ofSeconds(10), 1);
+    BlockChain chain = new BlockChain(r, null);
+    for (int i = 0; i < 3; i++) {
+      chain.append(chain.mine(new Transaction("", "T" + i, i)));
+    } // for
+    assertTrue(r.current().getTarget().compareTo(r.getFloor().getTarget()) < 0,
+        "fast blocks raised the difficulty");
+    chain.append(chain.mine(new Transaction("", "Last", 1)));
+    chain.check();
+  } // retargetingChainTest()
+
+  /**
+   * Only appended, timed blocks move the target; each block is checked
+   * against the target it was appended under; and removing a block
+   * restores the target from before it.
+   */
+  @Test
+  public void retargetHistoryTest() throws Exception {
+    TargetValidator floor = TargetValidator.fromLeadingZeroBits(4);
+    Retargeter r = new Retargeter(floor, Duration.ofSeconds(10), 1);
+    BlockChain chain = new BlockChain(r, null);
+    assertEquals(floor, r.current(), "the initial block is not timed");
+    Block unused = chain.mine(new Transaction("", "U", 1));
+    assertEquals(floor, r.current(), "a block that is mined but not appended");
+    chain.append(chain.mine(new Transaction("", "A", 1)));
+    TargetValidator harder = r.current();
+    assertTrue(harder.getTarget().compareTo(floor.getTarget()) < 0, "fast block");
+    assertEquals(floor, r.target(1), "block 1 was appended under the floor");
+    assertEquals(harder, r.target(2), "block 2 is appended under the new target");
+
+    // A block that meets the floor but not the new target is turned away.
+    Block easy = new Block(2, new Transaction("", "E", 1), chain.getHash(),
+        (h) -> floor.isValid(h) && !harder.isValid(h));
+    assertThrows(IllegalArgumentException.class, () -> chain.append(easy), "too easy");
+    assertEquals(2, chain.getSize(), "easy block not appended");
+
+    chain.append(chain.mine(new Transaction("", "B", 1)));
+    assertTrue(chain.isCorrect(true), "every block meets its own target");
+    assertEquals(-1, chain.audit(), "audit with per-block targets");
+    assertTrue(chain.removeLast(), "remove block 2");
+    assertEquals(harder, r.current(), "target from before block 2");
+    assertTrue(chain.removeLast(), "remove block 1");
+    assertEquals(floor, r.current(), "target from before block 1");
+    chain.append(unused);
+    assertEquals(2, chain.getSize(), "block mined earlier appended now");
+    chain.check();
+  } // retargetHistoryTest()
+} // class TestTargetValidator
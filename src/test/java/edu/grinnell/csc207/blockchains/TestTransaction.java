@@ -1,6 +1,13 @@
 package edu.grinnell.csc207.blockchains;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import org.junit.jupiter.api.Test;
 
@@ -38,4 +45,52 @@ public class TestTransaction {
         trans.toString(),
         "String representation of deposit");
   } // depositTest()
+
+  /**
+   * Test that the encoding separates the fields and survives a round
+   * trip through a buffer.
+   */
+  @Test
+  public void encodingTest() {
+    Transaction ab = new Transaction("ab", "c", 5);
+    Transaction bc = new Transaction("a", "bc", 5);
+    assertFalse(Arrays.equals(ab.getEncoded(), bc.getEncoded()),
+        "Field boundaries are part of the encoding");
+
+    Transaction[] all = {ab, bc, new Transaction("", "Zo\u00eb", -7),
+        new Transaction("\u6771\u4eac", "", Integer.MAX_VALUE),
+        new Transaction("\ud83d\ude00", "Zo", 1)};
+    int total = 0;
+    for (Transaction t : all) {
+      assertEquals(t.getEncoded().length, t.encodedLength(), "Length of " + t);
+      total += t.encodedLength();
+    } // for
+    ByteBuffer buffer = ByteBuffer.allocate(total);
+    for (Transaction t : all) {
+      t.writeTo(buffer);
+    } // for
+    buffer.flip();
+    for (Transaction t : all) {
+      assertEquals(t, Transaction.readFrom(buffer), "Round trip of " + t);
+    } // for
+    assertThrows(IllegalArgumentException.class,
+        () -> Transaction.readFrom(ByteBuffer.wrap(new byte[] {0, 0, 0, 9, 1})));
+    Transaction lone = new Transaction("\ud83d", "", 1);
+    assertEquals(lone.getEncoded().length, lone.encodedLength(), "Lone surrogate");
+  } // encodingTest()
+
+  /**
+   * Test that transactions share names, and that transactions with equal
+   * names and amounts are equal.
+   */
+  @Test
+  public void equalityTest() {
+    Transaction first = new Transaction(new String("Alpha"), new String("Beta"), 3);
+    Transaction second = new Transaction(new String("Alpha"), new String("Beta"), 3);
+    assertSame(first.getSource(), second.getSource(), "Sources are shared");
+    assertSame(first.getTarget(), second.getTarget(), "Targets are shared");
+    assertEquals(first, second, "Same names and amount");
+    assertEquals(first.hashCode(), second.hashCode(), "Same hash code");
+    assertNotEquals(first, new Transaction("Beta", "Alpha", 3), "Swapped names");
+  } // equalityTest()
 } // class TestTransaction
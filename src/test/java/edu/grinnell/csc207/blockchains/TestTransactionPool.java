@@ -0,0 +1,174 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests of our TransactionPool class.
+ *
+ * @author Mina Bakrac
+ */
+public class TestTransactionPool {
+  /**
+   * Duplicates are dropped while pending or in flight, and allowed once
+   * settled (for a pool that cannot see the chain).
+   */
+  @Test
+  public void dedupeTest() throws Exception {
+    TransactionPool pool = new TransactionPool(10);
+    assertTrue(pool.submit(new Transaction("A", "B", 1)), "first submit");
+    assertFalse(pool.submit(new Transaction("A", "B", 1)), "duplicate submit");
+    assertFalse(pool.offer(new Transaction("A", "B", 1), 0, TimeUnit.SECONDS),
+        "duplicate offer");
+    assertEquals(1, pool.size(), "one pending");
+    List<Transaction> batch = pool.drain(5);
+    assertEquals(List.of(new Transaction("A", "B", 1)), batch, "drained");
+    assertFalse(pool.submit(new Transaction("A", "B", 1)), "resubmit in flight");
+    pool.settle(batch);
+    assertTrue(pool.submit(new Transaction("A", "B", 1)), "resubmit after settling");
+    assertThrows(IllegalArgumentException.class, () -> pool.take(0), "take none");
+
+    AtomicInteger asked = new AtomicInteger();
+    TransactionPool counted = new TransactionPool(10, (a, b) -> 0, (t) -> {
+      asked.incrementAndGet();
+      return false;
+    });
+    assertTrue(counted.submit(new Transaction("C", "D", 1)), "submit to a counted pool");
+    assertEquals(1, asked.get(), "settled asked once per submit");
+  } // dedupeTest()
+
+  /**
+   * A batch that fails to be mined goes back to the pool, ahead of later
+   * submissions, and a pool that can see the chain turns away
+   * transactions already in it.
+   */
+  @Test
+  public void requeueTest() throws Exception {
+    AtomicBoolean broken = new AtomicBoolean(false);
+    BlockChain chain = new BlockChain((h) -> {
+      if (broken.get()) {
+        throw new IllegalStateException("Broken validator");
+      } // if
+      return true;
+    });
+    TransactionPool pool = new TransactionPool(10, (a, b) -> 0, chain::contains);
+    pool.submit(new Transaction("", "A", 1));
+    pool.submit(new Transaction("", "B", 2));
+    broken.set(true);
+    assertThrows(IllegalStateException.class, () -> chain.mineFrom(pool, 1));
+    assertEquals(2, pool.size(), "batch requeued");
+    assertFalse(pool.submit(new Transaction("", "A", 1)), "requeued transaction pending");
+    broken.set(false);
+    assertEquals(List.of(new Transaction("", "A", 1)),
+        chain.mineFrom(pool, 1).getTransactions(), "requeued batch first");
+    assertFalse(pool.submit(new Transaction("", "A", 1)), "transaction in the chain");
+    assertTrue(pool.submit(new Transaction("", "C", 1)), "new transaction");
+    assertEquals(List.of(new Transaction("", "B", 2), new Transaction("", "C", 1)),
+        chain.mineFrom(pool, 5).getTransactions(), "the rest");
+    assertEquals(0, pool.size(), "pool empty");
+  } // requeueTest()
+
+  /**
+   * Transactions come out in priority order, ties in submission order.
+   */
+  @Test
+  public void priorityTest() throws Exception {
+    TransactionPool pool = new TransactionPool(10,
+        Comparator.comparingInt(Transaction::getAmount).reversed());
+    pool.submit(new Transaction("", "Low", 1));
+    pool.submit(new Transaction("", "First", 5));
+    pool.submit(new Transaction("", "High", 9));
+    pool.submit(new Transaction("", "Second", 5));
+    List<String> order = new ArrayList<>();
+    for (Transaction t : pool.drain(10)) {
+      order.add(t.getTarget());
+    } // for
+    assertEquals(List.of("High", "First", "Second", "Low"), order, "priority order");
+  } // priorityTest()
+
+  /**
+   * A full pool turns away offers and holds up submitters until drained.
+   */
+  @Test
+  public void backpressureTest() throws Exception {
+    TransactionPool pool = new TransactionPool(2);
+    pool.submit(new Transaction("", "A", 1));
+    pool.submit(new Transaction("", "B", 1));
+    assertFalse(pool.offer(new Transaction("", "C", 1), 10, TimeUnit.MILLISECONDS),
+        "offer to full pool");
+    CountDownLatch submitted = new CountDownLatch(1);
+    Thread producer = new Thread(() -> {
+      try {
+        pool.submit(new Transaction("", "D", 1));
+        submitted.countDown();
+      } catch (InterruptedException e) {
+        // The test fails below.
+      } // try/catch
+    });
+    producer.start();
+    assertFalse(submitted.await(100, TimeUnit.MILLISECONDS), "submit waits for room");
+    assertEquals(1, pool.drain(1).size(), "drain one");
+    assertTrue(submitted.await(1, TimeUnit.MINUTES), "submit proceeds");
+    assertTrue(pool.contains(new Transaction("", "D", 1)), "waiting submission added");
+  } // backpressureTest()
+
+  /**
+   * Many producers and a mining loop move every transaction into the
+   * chain exactly once, even when each is submitted twice.
+   */
+  @Test
+  public void producersTest() throws Exception {
+    BlockChain chain = new BlockChain((h) -> true);
+    TransactionPool pool = new TransactionPool(16, (a, b) -> 0, chain::contains);
+    int producers = 4;
+    int each = 50;
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int p = 0; p < producers; p++) {
+        String name = "P" + p;
+        futures.add(executor.submit(() -> {
+          for (int i = 0; i < each; i++) {
+            pool.submit(new Transaction("", name, i));
+            pool.submit(new Transaction("", name, i)); // A duplicate, always dropped.
+          } // for
+          return null;
+        }));
+      } // for
+      List<Transaction> mined = new ArrayList<>();
+      while (mined.size() < producers * each) {
+        mined.addAll(chain.mineFrom(pool, 8).getTransactions());
+      } // while
+      for (Future<?> f : futures) {
+        f.get(1, TimeUnit.MINUTES);
+      } // for
+      assertEquals(0, pool.size(), "no transaction left or resubmitted");
+      assertEquals(producers * each, new HashSet<>(mined).size(), "no transaction mined twice");
+      for (int p = 0; p < producers; p++) {
+        for (int i = 0; i < each; i++) {
+          assertTrue(chain.contains(new Transaction("", "P" + p, i)), "P" + p + " got " + i);
+        } // for
+      } // for
+      chain.check();
+    } finally {
+      executor.shutdownNow();
+    } // try/finally
+  } // producersTest()
+} // class TestTransactionPool
@@ -0,0 +1,67 @@
+package edu.grinnell.csc207.blockchains;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Cross-checks of the multi-lane mining engine against the scalar one.
+ *
+ * @author Mina Bakrac
+ */
+public class TestVectorSha256 {
+  /**
+   * Skip these tests when the Vector API is not available.
+   */
+  @BeforeEach
+  public void requireVectors() {
+    assumeTrue(MiningEngine.VECTOR.isAvailable(), "Vector API not available");
+  } // requireVectors()
+
+  /**
+   * Every lane finds the same hash as the scalar engine, for every
+   * prefix length (so the nonce lands at every offset in the final
+   * block(s)) and for starts that carry across nonce bytes.
+   */
+  @Test
+  public void allLanesTest() {
+    long[] starts = {0, 248, 0xFFF8, -16, Long.MAX_VALUE - 15};
+    for (int len = 0; len < 3 * Sha256.BLOCK_BYTES; len++) {
+      byte[] prefix = new byte[len];
+      for (int i = 0; i < len; i++) {
+        prefix[i] = (byte) (i * 31 + len);
+      } // for
+      Sha256 scalar = new Sha256(prefix);
+      NonceEngine vector = MiningEngine.VECTOR.create(prefix);
+      int lanes = vector.lanes();
+      byte[] out = new byte[BlockHasher.HASH_BYTES];
+      for (long start : starts) {
+        for (int lane = 0; lane < lanes; lane++) {
+          scalar.hash(start + lane, out);
+          Hash expected = new Hash(out);
+          assertEquals(lane, vector.firstValid(start, (h) -> h.equals(expected)),
+              "prefix length " + len + ", nonce " + (start + lane));
+        } // for
+      } // for
+    } // for
+  } // allLanesTest()
+
+  /**
+   * Vector mining finds the same nonce as scalar mining with one worker.
+   */
+  @Test
+  public void sameNonceTest() {
+    Transaction t = new Transaction("", "Someone", 555);
+    Hash ph = new Hash(new byte[] {5, 5, 5});
+    HashValidator check = (h) -> (h.get(0) == 0) && (h.get(1) >= 0);
+    long scalar = new Miner(1, MiningEngine.SCALAR).findNonce(5, t, ph, check);
+    Miner miner = new Miner(1, MiningEngine.VECTOR);
+    assertEquals(MiningEngine.VECTOR, miner.getEngine(), "vector engine in use");
+    assertEquals(scalar, miner.findNonce(5, t, ph, check), "one worker searches in order");
+    assertTrue(check.isValid(new Block(5, t, ph, scalar).getHash()), "nonce is valid");
+  } // sameNonceTest()
+} // class TestVectorSha256